@@ -0,0 +1,147 @@
+package com.woo.loganalyzer.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic logs in the "YYYY-MM-DD HH:mm:ss LEVEL message" format,
+ * or in the layout of one of the other --format presets (iso8601, logback,
+ * json). Size, level mix and message cardinality are configurable; output
+ * is deterministic for a given seed so runs are comparable.
+ *
+ * Usage: LogGenerator &lt;file&gt; &lt;lines&gt; [levels] [cardinality] [seed] [format]
+ * e.g.   LogGenerator big.log 1000000 INFO=70,WARN=15,ERROR=10,DEBUG=5 5000
+ */
+public class LogGenerator {
+
+    static final String DEFAULT_LEVELS = "INFO=70,WARN=15,ERROR=10,DEBUG=5";
+
+    static final String[] FORMATS = {"default", "iso8601", "logback", "json"};
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ISO_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    private static final String[] TEMPLATES = {
+            "User login: user%d",
+            "Database connection failed for pool %d",
+            "Request took=%dms path=/api/orders",
+            "Cache miss for key session:%d",
+            "Payment processed id=%d",
+            "Retrying database connection (attempt %d)",
+            "Server started on port %d",
+            "Timeout contacting service-%d",
+    };
+
+    private final String[] levels;
+    private final int[] cumulativeWeights;
+    private final int cardinality;
+    private final String format;
+    private final Random random;
+
+    /**
+     * @param levelMix    comma-separated LEVEL=weight pairs
+     * @param cardinality number of distinct messages to draw from
+     */
+    public LogGenerator(String levelMix, int cardinality, long seed) {
+        this(levelMix, cardinality, seed, "default");
+    }
+
+    /**
+     * @param format one of {@link #FORMATS}
+     */
+    public LogGenerator(String levelMix, int cardinality, long seed, String format) {
+        if (!Arrays.asList(FORMATS).contains(format)) {
+            throw new IllegalArgumentException("Unknown format - " + format);
+        }
+        Map<String, Integer> weights = parseLevels(levelMix);
+        this.levels = weights.keySet().toArray(new String[0]);
+        this.cumulativeWeights = new int[levels.length];
+        int total = 0;
+        for (int i = 0; i < levels.length; i++) {
+            total += weights.get(levels[i]);
+            cumulativeWeights[i] = total;
+        }
+        this.cardinality = Math.max(1, cardinality);
+        this.format = format;
+        this.random = new Random(seed);
+    }
+
+    public void write(Writer out, long lines) throws IOException {
+        LocalDateTime time = LocalDateTime.of(2024, 12, 1, 0, 0);
+        for (long i = 0; i < lines; i++) {
+            time = time.plusSeconds(random.nextInt(3));
+            String level = nextLevel();
+            String message = nextMessage();
+            switch (format) {
+                case "iso8601" -> out.write(ISO_TIMESTAMP.format(time) + " " + level + " " + message);
+                case "logback" -> out.write(ISO_TIMESTAMP.format(time) + " [worker-" + (i % 8) + "] " + level
+                        + " com.example.Service - " + message);
+                case "json" -> out.write("{\"timestamp\":\"" + ISO_TIMESTAMP.format(time) + "\",\"level\":\""
+                        + level + "\",\"thread\":\"worker-" + (i % 8) + "\",\"message\":\"" + message + "\"}");
+                default -> out.write(TIMESTAMP.format(time) + " " + level + " " + message);
+            }
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Write a log file and return its size in bytes
+     */
+    public long writeFile(File file, long lines) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            write(out, lines);
+        }
+        return file.length();
+    }
+
+    private String nextLevel() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < levels.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return levels[i];
+            }
+        }
+        return levels[levels.length - 1];
+    }
+
+    private String nextMessage() {
+        // Spread the distinct messages over the templates
+        int id = random.nextInt(cardinality);
+        return String.format(TEMPLATES[id % TEMPLATES.length], id / TEMPLATES.length);
+    }
+
+    private static Map<String, Integer> parseLevels(String levelMix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : levelMix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2 || Integer.parseInt(pair[1].trim()) <= 0) {
+                throw new IllegalArgumentException("Invalid level weight - " + part);
+            }
+            weights.put(pair[0].trim().toUpperCase(), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LogGenerator <file> <lines> [levels] [cardinality] [seed] [format]");
+            System.exit(1);
+        }
+        String levels = args.length > 2 ? args[2] : DEFAULT_LEVELS;
+        int cardinality = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+        String format = args.length > 5 ? args[5] : "default";
+
+        long size = new LogGenerator(levels, cardinality, seed, format).writeFile(new File(args[0]), Long.parseLong(args[1]));
+        System.out.println("Wrote " + args[1] + " lines (" + size + " bytes) to " + args[0]);
+    }
+}
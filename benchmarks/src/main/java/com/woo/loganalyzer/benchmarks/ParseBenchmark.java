@@ -0,0 +1,125 @@
+package com.woo.loganalyzer.benchmarks;
+
+import com.woo.loganalyzer.LogFilter;
+import com.woo.loganalyzer.LogFormat;
+import com.woo.loganalyzer.LogLineParser;
+import com.woo.loganalyzer.ParsedLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-line hot paths on an in-memory batch of generated lines:
+ * tokenizing (timestamp and level), message extraction, and the date
+ * and regex filters. One operation processes the whole batch. The lines
+ * are written in each --format preset and parsed with that preset's
+ * parser, so the formats can be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    private static final int BATCH_LINES = 10_000;
+
+    @Param({"1000", "100000"})
+    public int cardinality;
+
+    @Param({LogGenerator.DEFAULT_LEVELS})
+    public String levels;
+
+    @Param({"default", "iso8601", "logback", "json"})
+    public String format;
+
+    private ByteBuffer buffer;
+    private int[] lineStarts;
+    private int[] lineEnds;
+
+    private LogLineParser parser;
+    private final ParsedLine line = new ParsedLine();
+    private LogFilter dateFilter;
+    private LogFilter regexFilter;
+
+    @Setup
+    public void generate() throws IOException {
+        StringWriter out = new StringWriter();
+        new LogGenerator(levels, cardinality, 42, format).write(out, BATCH_LINES);
+        byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.wrap(bytes);
+
+        lineStarts = new int[BATCH_LINES];
+        lineEnds = new int[BATCH_LINES];
+        int start = 0;
+        int count = 0;
+        for (int i = 0; i < bytes.length && count < BATCH_LINES; i++) {
+            if (bytes[i] == '\n') {
+                lineStarts[count] = start;
+                lineEnds[count++] = i;
+                start = i + 1;
+            }
+        }
+
+        parser = LogFormat.of(format, null).newParser();
+        dateFilter = LogFilter.of(null, null, "2024-12-01 02:00", "2024-12-01 04:00", null);
+        regexFilter = LogFilter.of(null, null, null, null, "took=\\d{3,}ms");
+    }
+
+    /** Timestamp and level tokenizing, the former extractLogLevel/date parsing */
+    @Benchmark
+    public void parse(Blackhole blackhole, Throughput throughput) {
+        for (int i = 0; i < BATCH_LINES; i++) {
+            parser.parse(buffer, lineStarts[i], lineEnds[i], line);
+            blackhole.consume(line.level());
+            blackhole.consume(line.epochSecond());
+        }
+        throughput.add(buffer.limit(), BATCH_LINES);
+    }
+
+    /** Parse plus message decoding, the former extractMessage */
+    @Benchmark
+    public void extractMessage(Blackhole blackhole, Throughput throughput) {
+        for (int i = 0; i < BATCH_LINES; i++) {
+            parser.parse(buffer, lineStarts[i], lineEnds[i], line);
+            blackhole.consume(line.message());
+        }
+        throughput.add(buffer.limit(), BATCH_LINES);
+    }
+
+    /** Parse plus the --from/--to check, the former matchesDateFilter */
+    @Benchmark
+    public void dateFilter(Blackhole blackhole, Throughput throughput) {
+        for (int i = 0; i < BATCH_LINES; i++) {
+            parser.parse(buffer, lineStarts[i], lineEnds[i], line);
+            blackhole.consume(dateFilter.matches(line));
+        }
+        throughput.add(buffer.limit(), BATCH_LINES);
+    }
+
+    /** Parse plus a --regex match against the decoded line */
+    @Benchmark
+    public void regexFilter(Blackhole blackhole, Throughput throughput) {
+        for (int i = 0; i < BATCH_LINES; i++) {
+            parser.parse(buffer, lineStarts[i], lineEnds[i], line);
+            blackhole.consume(regexFilter.matches(line));
+        }
+        throughput.add(buffer.limit(), BATCH_LINES);
+    }
+}
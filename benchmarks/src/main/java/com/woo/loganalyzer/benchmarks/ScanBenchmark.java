@@ -0,0 +1,117 @@
+package com.woo.loganalyzer.benchmarks;
+
+import com.woo.loganalyzer.LogAnalyzerApp;
+import com.woo.loganalyzer.LogScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-file runs on a generated log: line counting and each report
+ * mode end to end through the command line, with console output
+ * discarded. One operation is one full pass over the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({LogGenerator.DEFAULT_LEVELS})
+    public String levels;
+
+    @Param({"1000"})
+    public int cardinality;
+
+    @Param({"1"})
+    public int threads;
+
+    private File logFile;
+    private long fileSize;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        logFile = Files.createTempFile("loganalyzer-bench", ".log").toFile();
+        fileSize = new LogGenerator(levels, cardinality, 42).writeFile(logFile, lines);
+
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() {
+        System.setOut(console);
+        logFile.delete();
+    }
+
+    @Benchmark
+    public long countLines(Throughput throughput) throws IOException {
+        long count = new LogScanner(logFile, threads).countLines();
+        throughput.add(fileSize, count);
+        return count;
+    }
+
+    @Benchmark
+    public int stats(Throughput throughput) {
+        return run(throughput, "--stats");
+    }
+
+    @Benchmark
+    public int timeStats(Throughput throughput) {
+        return run(throughput, "--time-stats", "hourly");
+    }
+
+    @Benchmark
+    public int top(Throughput throughput) {
+        return run(throughput, "--top", "10");
+    }
+
+    @Benchmark
+    public int summary(Throughput throughput) {
+        return run(throughput, "--summary");
+    }
+
+    @Benchmark
+    public int levelFilter(Throughput throughput) {
+        return run(throughput, "-l", "ERROR");
+    }
+
+    private int run(Throughput throughput, String... mode) {
+        String[] args = new String[mode.length + 3];
+        System.arraycopy(mode, 0, args, 0, mode.length);
+        args[mode.length] = "--threads";
+        args[mode.length + 1] = String.valueOf(threads);
+        args[mode.length + 2] = logFile.getPath();
+
+        int exitCode = new CommandLine(new LogAnalyzerApp()).execute(args);
+        if (exitCode != 0) {
+            throw new IllegalStateException("Run failed with exit code " + exitCode);
+        }
+        throughput.add(fileSize, lines);
+        return exitCode;
+    }
+}
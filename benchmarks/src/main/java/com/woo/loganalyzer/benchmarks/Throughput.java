@@ -0,0 +1,30 @@
+package com.woo.loganalyzer.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results reported next to ops/s: bytes and lines processed
+ * per second, so throughput is comparable across input sizes.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long bytes;
+    public long lines;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        lines = 0;
+    }
+
+    void add(long byteCount, long lineCount) {
+        bytes += byteCount;
+        lines += lineCount;
+    }
+}
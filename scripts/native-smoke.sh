@@ -0,0 +1,233 @@
+#!/usr/bin/env bash
+#
+# Runs every log-analyzer option against test.log with a reference build
+# (the shaded jar on the JVM) and a candidate (the native executable),
+# then compares what each printed, its exit codes and the files it exported.
+# A few cases also check their output for the expected result.
+#
+#   mvn package && mvn -Pnative package
+#   scripts/native-smoke.sh
+#
+# Override the commands with REFERENCE="..." and CANDIDATE="...", and set
+# KEEP=1 to keep the outputs. Timings (--metrics) are masked before comparing.
+
+set -u
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+REFERENCE=${REFERENCE:-"java -jar $ROOT/target/log-analyzer-1.0-SNAPSHOT.jar"}
+CANDIDATE=${CANDIDATE:-"$ROOT/target/log-analyzer"}
+PORT=${PORT:-7391}
+
+WORK=$(mktemp -d)
+EXPECT_FAILED=
+if [ -z "${KEEP:-}" ]; then
+    trap 'rm -rf "$WORK"' EXIT
+fi
+
+# Run one case: check <name> <args...>; output and exit code go to <name>.out
+check() {
+    local name=$1
+    shift
+    "${COMMAND[@]}" "$@" > "$name.out" 2>&1
+    echo "exit $?" >> "$name.out"
+}
+
+# Same, for output that holds timings: numbers are replaced and spacing collapsed
+check_timed() {
+    local name=$1
+    check "$@"
+    mask "$name.out"
+}
+
+# Record a failed expectation; the script then exits 1 even if the builds agree
+expect() {
+    local name=$1 pattern=$2
+    if ! grep -q "$pattern" "$name.out"; then
+        echo "FAILED: $name.out does not contain '$pattern'"
+        EXPECT_FAILED=1
+    fi
+}
+
+mask() {
+    sed -E -i 's/[0-9]+(\.[0-9]+)?/N/g; s/ +/ /g' "$1"
+}
+
+# Send a command line to the server, one argument per line: query [-i] <args...>
+query() {
+    local options=(-s)
+    if [ "$1" = "-i" ]; then
+        options+=(-i)
+        shift
+    fi
+    printf '%s\n' "$@" | curl "${options[@]}" -H 'Content-Type: application/x-log-analyzer-args' \
+        --data-binary @- "http://127.0.0.1:$PORT/query"
+}
+
+run_all() {
+    read -r -a COMMAND <<< "$1"
+    mkdir -p "$2"
+    cd "$2" || exit 1
+
+    cp "$ROOT/test.log" test.log
+    gzip -n -c test.log > test.log.gz
+    printf 'timeout\nregex:fail(ed|ure)\n' > patterns.txt
+    printf '%s\n' \
+        '{"timestamp":"2024-12-09T10:00:00+02:00","level":"ERROR","message":"Disk full"}' \
+        '{"ts":1733738400,"lvl":"info","msg":"Started"}' \
+        '{"ts":1733738460,"level":"WARN","message":"Retrying \"db-1\"\tafter \u00e9chec"}' > events.json
+    printf '%s\n' \
+        '2024-12-09 10:00:00.123 [main] ERROR com.example.App - Disk full' \
+        '2024-12-09 10:00:01.456 [worker-1] INFO com.example.App - Started' > logback.log
+    printf '%s\n' \
+        '2024-12-09 10:00:01 INFO GET /items took=12ms' \
+        '2024-12-09 10:00:20 ERROR GET /items took=1.5s' \
+        '2024-12-09 10:00:40 INFO GET /items took: 250us' > latency.log
+    # Two quiet lines a minute for 20 minutes, with 30 errors at 10:15
+    awk 'BEGIN { for (m = 0; m < 20; m++) {
+        printf "2024-12-09 10:%02d:05 INFO GET /items took=%dms\n", m, 10 + m
+        printf "2024-12-09 10:%02d:35 INFO GET /orders took=%dms\n", m, 20 + m
+        if (m == 15) for (s = 0; s < 30; s++) printf "2024-12-09 10:15:%02d ERROR Connection refused by db-%d\n", s + 20, s % 3
+    } }' > bursts.log
+    head -n 35 bursts.log > bursts.log.1 # Rotated: the older half, listed after the newer one
+    tail -n +36 bursts.log > bursts-current.log
+
+    # Help and plain runs
+    check help --help
+    check version --version
+    check merge-help merge --help
+    check serve-help serve --help
+    check plain test.log
+    check count -c test.log
+    check missing-file no-such.log
+    check bad-option --no-such-option test.log
+
+    # Filters
+    check level -l ERROR test.log
+    check level-bad -l LOUD test.log
+    check search -s database -s user test.log
+    check regex -r 'fail(ed|ure)' test.log
+    check regex-bad -r '(' test.log
+    check patterns-file --patterns-file patterns.txt test.log
+    check dates --from 2024-12-06 --to '2024-12-08 12:00' test.log
+    check dates-bad --from 2024-13-01 test.log
+    check count-only --count-only -l WARN test.log
+    check async --async-output -s a test.log
+
+    # Reports
+    check stats --stats test.log
+    check hourly --time-stats hourly test.log
+    check daily --time-stats daily test.log
+    check top --top 3 test.log
+    check top-approx --top 3 --approx 2 test.log
+    check top-templates --top 3 --templates test.log
+    check summary --summary test.log
+    check summary-threads --summary --threads 2 test.log
+    check summary-gzip --summary test.log.gz
+    check bucket --bucket 1d test.log
+    check bucket-latency --bucket 30s --latency-field took latency.log
+    check bucket-bad --bucket 5x test.log
+    check bursts --bursts bursts.log
+    check bursts-stats --bursts --stats bursts.log
+    check bursts-threads --bursts --threads 2 bursts.log
+    check bursts-rotated --bursts bursts-current.log bursts.log.1
+
+    # CSV exports, one per report
+    check export-stats --stats --export stats.csv test.log
+    check export-hourly --time-stats hourly --export hourly.csv test.log
+    check export-top --top 3 --export top.csv test.log
+    check export-summary --summary --export summary.csv test.log
+    check export-bucket --bucket 1h --export bucket.csv latency.log
+
+    # Line exports
+    check lines-csv --export-lines lines.csv -l ERROR test.log
+    check lines-jsonl --export-lines lines.jsonl test.log
+    check lines-bin --export-lines lines.bin --export-format BINARY test.log
+    check lines-gz --export-lines lines.jsonl.gz test.log.gz
+
+    # Partials and merge
+    check partial --emit-partial a.part --stats test.log
+    check partial-gz --emit-partial b.part test.log.gz
+    check merge merge --summary a.part b.part
+    check merge-partial merge --emit-partial ab.part --top 2 a.part b.part
+
+    # Formats and zones
+    check format-json --format json --summary events.json
+    check format-zone --format json --timezone UTC -l ERROR events.json
+    check format-json-lines --format json --export-lines events.jsonl events.json
+    check format-logback --format logback --stats logback.log
+    check format-pattern --format '{timestamp} [{thread}] {level} {logger} - {message}' -s Disk logback.log
+    check format-bad --format '{nothing' test.log
+
+    # Index, token index, cache and line lookup
+    check build-index --build-index --stats test.log
+    check token-index --token-index -s ' user' test.log
+    check line --line 3 test.log
+    check line-bad --line 99 test.log
+    check cache --cache --stats test.log
+    check cached --top 2 test.log
+
+    # Extend a token index built in parallel ranges: a range can end in a block shorter than the
+    # block size, and lines appended after it must still reach a token filter. Lines are 100 bytes,
+    # so the first range ends just before the last line.
+    awk 'BEGIN { for (i = 0; i < 83887; i++)
+        printf "2024-12-09 10:%02d:%02d INFO request %08d handled %49s\n", (i / 1500) % 60, (i / 25) % 60, i, "ok"
+    }' > grown.log
+    echo '2024-12-09 11:00:00 INFO end' >> grown.log
+    check grown-index --build-index --token-index --threads 4 -c grown.log
+    echo '2024-12-09 11:00:01 ERROR QQRARE77 appended' >> grown.log
+    check grown-reindex --build-index --token-index --threads 4 -c grown.log
+    check grown-search -c -s ' QQRARE77 ' grown.log
+    expect grown-search 'Found 1 matching lines'
+    rm -f grown.log grown.log.idx
+
+    # Metrics
+    check_timed metrics --metrics -l ERROR test.log
+    check_timed metrics-json --metrics-json metrics.jsonl --stats test.log
+    mask metrics.jsonl
+
+    # Follow: print a line appended while following, then stop
+    cp test.log follow.log
+    "${COMMAND[@]}" -f -l ERROR --interval 60 --window 30 follow.log > follow.out 2>&1 &
+    local pid=$!
+    sleep 2
+    printf '\n2024-12-10 08:00:00 ERROR Appended while following\n' >> follow.log # test.log has no final newline
+    sleep 2
+    kill "$pid" 2> /dev/null
+    wait "$pid" 2> /dev/null
+
+    # Serve: one good and one failing query, a GET, and a query that would write a file
+    "${COMMAND[@]}" serve --port "$PORT" > /dev/null 2>&1 &
+    pid=$!
+    for _ in $(seq 50); do
+        query --version > /dev/null && break
+        sleep 0.2
+    done
+    query --stats test.log > serve.out
+    query -i -l LOUD test.log | grep -iv '^date:' | tr -d '\r' >> serve.out
+    curl -s -i "http://127.0.0.1:$PORT/query" | grep -iv '^date:' | tr -d '\r' >> serve.out
+    query --export-lines written.csv test.log >> serve.out
+    ls written.csv >> serve.out 2>&1
+    cp test.log served.log
+    query -s database served.log >> serve.out
+    query --stats served.log >> serve.out
+    ls served.log.* >> serve.out 2>&1 # Queries keep their index and cache in memory
+    kill "$pid" 2> /dev/null
+    wait "$pid" 2> /dev/null
+
+    rm -f test.log.idx test.log.cache # They record the modification time of the copy
+    cd "$ROOT" || exit 1
+}
+
+echo "Reference: $REFERENCE"
+run_all "$REFERENCE" "$WORK/reference"
+echo "Candidate: $CANDIDATE"
+run_all "$CANDIDATE" "$WORK/candidate"
+
+if diff -r "$WORK/reference" "$WORK/candidate" && [ -z "$EXPECT_FAILED" ]; then
+    echo "OK: $(ls "$WORK/reference" | wc -l) outputs and exports match"
+    [ -n "${KEEP:-}" ] && echo "Outputs kept in $WORK"
+else
+    echo "FAILED: the candidate differs from the reference or missed an expectation (above)"
+    [ -n "${KEEP:-}" ] && echo "Outputs kept in $WORK"
+    exit 1
+fi
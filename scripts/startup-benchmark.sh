@@ -0,0 +1,71 @@
+#!/usr/bin/env bash
+#
+# Compares time to first output and total time of small runs on the JVM,
+# on the JVM with a class-data sharing archive, and as a native executable.
+#
+#   mvn package && mvn -Pnative package
+#   scripts/startup-benchmark.sh [runs] [log-analyzer arguments...]
+#
+# Defaults to 20 runs of "--stats test.log" and prints the median of each.
+# Override the commands with JVM="..." and NATIVE="...".
+
+set -u
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+JAR=$ROOT/target/log-analyzer-1.0-SNAPSHOT.jar
+JVM=${JVM:-"java -jar $JAR"}
+NATIVE=${NATIVE:-"$ROOT/target/log-analyzer"}
+RUNS=${1:-20}
+shift $(( $# > 0 ? 1 : 0 ))
+if [ $# -eq 0 ]; then
+    set -- --stats "$ROOT/test.log"
+fi
+
+CDS_ARCHIVE=$(mktemp -u).jsa
+trap 'rm -f "$CDS_ARCHIVE"' EXIT
+
+now_ns() {
+    date +%s%N
+}
+
+# Print "<ms to first output byte> <ms to exit>" for one run of the command
+measure() {
+    local start first end
+    start=$(now_ns)
+    first=$("$@" 2>&1 | { IFS= read -r -n 1 _; now_ns; cat > /dev/null; })
+    end=$(now_ns)
+    echo "$(( (first - start) / 1000000 )) $(( (end - start) / 1000000 ))"
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print (NR % 2) ? values[(NR + 1) / 2] : int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+benchmark() {
+    local label=$1
+    shift
+    if ! "$@" --version > /dev/null 2>&1; then
+        printf '%-12s %18s %12s   (not available: %s)\n' "$label" "-" "-" "$*"
+        return
+    fi
+    "$@" "${ARGS[@]}" > /dev/null 2>&1 # Warm the page cache
+
+    local results
+    results=$(for _ in $(seq "$RUNS"); do measure "$@" "${ARGS[@]}"; done)
+    printf '%-12s %18s %12s\n' "$label" \
+        "$(cut -d' ' -f1 <<< "$results" | median)" \
+        "$(cut -d' ' -f2 <<< "$results" | median)"
+}
+
+ARGS=("$@")
+read -r -a JVM_COMMAND <<< "$JVM"
+read -r -a NATIVE_COMMAND <<< "$NATIVE"
+
+echo "Arguments: ${ARGS[*]} ($RUNS runs, median)"
+printf '%-12s %18s %12s\n' "Build" "First output (ms)" "Total (ms)"
+printf '%s\n' "--------------------------------------------"
+benchmark "jvm" "${JVM_COMMAND[@]}"
+# The archive is written at the end of the first run and used by the later ones
+benchmark "jvm+cds" "${JVM_COMMAND[0]}" -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="$CDS_ARCHIVE" \
+    "${JVM_COMMAND[@]:1}"
+benchmark "native" "${NATIVE_COMMAND[@]}"
@@ -0,0 +1,113 @@
+package com.woo.loganalyzer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over ASCII keys with ASCII case folding.
+ * The trie and its failure links are flattened into a single transition
+ * table, so matching costs one lookup per input byte however many keys
+ * there are. Bytes outside ASCII never take part in a key and return to
+ * the root state.
+ */
+public class AhoCorasick {
+
+    private static final int ALPHABET = 128;
+
+    // Next state for (state * ALPHABET + byte)
+    private final int[] transitions;
+
+    // Keys ending at each state (including through failure links), null when none
+    private final int[][] outputs;
+
+    /**
+     * @param keys non-empty lower-case ASCII keys; key ids are their list positions
+     */
+    public AhoCorasick(List<byte[]> keys) {
+        int maxStates = 1;
+        for (byte[] key : keys) {
+            maxStates += key.length;
+        }
+
+        int[] next = new int[maxStates * ALPHABET];
+        Arrays.fill(next, -1);
+        int[][] out = new int[maxStates][];
+        int states = 1;
+
+        // Build the trie
+        for (int id = 0; id < keys.size(); id++) {
+            int state = 0;
+            for (byte b : keys.get(id)) {
+                int slot = state * ALPHABET + b;
+                if (next[slot] < 0) {
+                    next[slot] = states++;
+                }
+                state = next[slot];
+            }
+            out[state] = append(out[state], id);
+        }
+
+        // Breadth-first: fill in failure transitions and inherit outputs from the failure state
+        int[] fail = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = next[c];
+            if (child < 0) {
+                next[c] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (out[fail[state]] != null) {
+                for (int id : out[fail[state]]) {
+                    out[state] = append(out[state], id);
+                }
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int slot = state * ALPHABET + c;
+                int fallback = next[fail[state] * ALPHABET + c];
+                if (next[slot] < 0) {
+                    next[slot] = fallback;
+                } else {
+                    fail[next[slot]] = fallback;
+                    queue.add(next[slot]);
+                }
+            }
+        }
+
+        // Upper-case letters move like their lower-case forms
+        for (int state = 0; state < states; state++) {
+            for (int c = 'A'; c <= 'Z'; c++) {
+                next[state * ALPHABET + c] = next[state * ALPHABET + c + ('a' - 'A')];
+            }
+        }
+
+        this.transitions = Arrays.copyOf(next, states * ALPHABET);
+        this.outputs = Arrays.copyOf(out, states);
+    }
+
+    public int next(int state, byte b) {
+        return b >= 0 ? transitions[state * ALPHABET + b] : 0;
+    }
+
+    /**
+     * Ids of the keys that end at this state, or null if none do
+     */
+    public int[] matches(int state) {
+        return outputs[state];
+    }
+
+    private static int[] append(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int[] longer = Arrays.copyOf(ids, ids.length + 1);
+        longer[ids.length] = id;
+        return longer;
+    }
+}
@@ -0,0 +1,79 @@
+package com.woo.loganalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads line chunks from a stream on a background thread, so that
+ * decompression overlaps with parsing. At most a few chunks are queued;
+ * the reader thread waits while the consumer catches up.
+ */
+public class BackgroundChunkReader implements Closeable {
+
+    private static final int QUEUE_SIZE = 4;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread thread;
+    private boolean done;
+
+    public BackgroundChunkReader(InputStream in, String name) {
+        thread = new Thread(() -> readAll(in), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readAll(InputStream in) {
+        try {
+            try (in) {
+                LineChunker chunker = new LineChunker(in);
+                ByteBuffer chunk;
+                while ((chunk = chunker.next()) != null) {
+                    queue.put(chunk);
+                }
+                queue.put(END);
+            } catch (IOException e) {
+                queue.put(e);
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        }
+    }
+
+    /**
+     * @return the next chunk of whole lines, or null at the end of the stream
+     */
+    public ByteBuffer next() throws IOException {
+        if (done) {
+            return null;
+        }
+
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        }
+
+        if (item == END) {
+            done = true;
+            return null;
+        }
+        if (item instanceof IOException e) {
+            done = true;
+            throw new IOException(e.getMessage(), e);
+        }
+        return (ByteBuffer) item;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,332 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Line count, error rate and latency percentiles per fixed-width bucket
+ * of log time (--bucket 5m), computed in the same single pass as the
+ * other reports.
+ *
+ * Line and ERROR counts go into {@link BucketCounts} keyed by the bucket
+ * number. A latency is taken from a field in the message such as
+ * "took=123ms" or "took: 1.5 s" and recorded in the bucket's
+ * {@link LatencyHistogram}, so memory per bucket is bounded however many
+ * lines fall into it, and month-long logs at minute granularity stay
+ * cheap. Lines without a date are only counted.
+ */
+public class BucketAnalytics implements LineAggregator<BucketAnalytics> {
+
+    private static final Pattern WIDTH = Pattern.compile("([1-9][0-9]{0,5})([smhd])");
+
+    // Latencies above this many units are clamped, so scaling to nanoseconds cannot overflow
+    private static final long MAX_WHOLE_UNITS = 1_000_000_000L;
+
+    private final long widthSeconds;
+    private final String latencyField;
+    private final byte[] latencyFieldBytes;
+
+    // Keyed by epoch second / widthSeconds
+    private final BucketCounts lineCounts = new BucketCounts();
+    private final BucketCounts errorCounts = new BucketCounts();
+    private final Map<Long, LatencyHistogram> latencies = new HashMap<>();
+    private final LatencyHistogram totalLatencies = new LatencyHistogram();
+
+    // Lines arrive in time order, so the last bucket's histogram is usually the next one's
+    private long lastKey = Long.MIN_VALUE;
+    private LatencyHistogram lastHistogram;
+
+    private long totalLines;
+    private long totalErrors;
+    private long undatedLines;
+
+    /**
+     * @param widthSeconds bucket width, as returned by {@link #parseWidth}
+     * @param latencyField name of the message field holding a latency, e.g. "took"
+     */
+    public BucketAnalytics(long widthSeconds, String latencyField) {
+        this.widthSeconds = widthSeconds;
+        this.latencyField = latencyField;
+        this.latencyFieldBytes = latencyField.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public BucketAnalytics newPartial() {
+        return new BucketAnalytics(widthSeconds, latencyField);
+    }
+
+    /**
+     * Seconds in a width such as "30s", "5m", "1h" or "1d"
+     *
+     * @return the width, or -1 if it is not a positive number with one of those units
+     */
+    public static long parseWidth(String width) {
+        Matcher matcher = WIDTH.matcher(width);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        long unit = switch (matcher.group(2)) {
+            case "s" -> 1;
+            case "m" -> 60;
+            case "h" -> ParsedLine.SECONDS_PER_HOUR;
+            default -> ParsedLine.SECONDS_PER_DAY;
+        };
+        return Long.parseLong(matcher.group(1)) * unit;
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        if (!line.hasDate()) {
+            undatedLines++;
+            return;
+        }
+        long key = Math.floorDiv(line.epochSecond(), widthSeconds);
+        lineCounts.add(key);
+        totalLines++;
+        if (line.level() == LogLevel.ERROR) {
+            errorCounts.add(key);
+            totalErrors++;
+        }
+
+        if (line.messageStart() >= 0) {
+            long micros;
+            if (line.isMessageInBuffer()) {
+                micros = latencyMicros(line.buffer(), line.messageStart(), line.messageEnd(), latencyFieldBytes);
+            } else {
+                // Fed from a LogCache, or a JSON message with escapes: only the message string is there
+                byte[] message = line.message().getBytes(StandardCharsets.UTF_8);
+                micros = latencyMicros(ByteBuffer.wrap(message), 0, message.length, latencyFieldBytes);
+            }
+            if (micros >= 0) {
+                histogram(key).record(micros);
+                totalLatencies.record(micros);
+            }
+        }
+    }
+
+    private LatencyHistogram histogram(long key) {
+        if (key != lastKey) {
+            lastKey = key;
+            lastHistogram = latencies.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return lastHistogram;
+    }
+
+    @Override
+    public boolean needsText() {
+        return false;
+    }
+
+    @Override
+    public void merge(BucketAnalytics next, long lineOffset) {
+        lineCounts.merge(next.lineCounts);
+        errorCounts.merge(next.errorCounts);
+        next.latencies.forEach((key, histogram) -> histogram(key).merge(histogram));
+        totalLatencies.merge(next.totalLatencies);
+        totalLines += next.totalLines;
+        totalErrors += next.totalErrors;
+        undatedLines += next.undatedLines;
+    }
+
+    /**
+     * The latency in microseconds from the first "field=value" or "field: value" in the bytes from..to,
+     * or -1 if there is none. The value may have a fraction and a unit of ns, us, µs, ms, s or sec;
+     * without a unit it is taken as milliseconds.
+     */
+    static long latencyMicros(ByteBuffer buffer, int from, int to, byte[] field) {
+        int last = to - field.length;
+        byte first = field[0];
+        candidates:
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) != first || (i > from && isWordByte(buffer.get(i - 1)))) {
+                continue;
+            }
+            for (int j = 1; j < field.length; j++) {
+                if (buffer.get(i + j) != field[j]) {
+                    continue candidates;
+                }
+            }
+            long micros = valueMicros(buffer, i + field.length, to);
+            if (micros >= 0) {
+                return micros;
+            }
+        }
+        return -1;
+    }
+
+    private static long valueMicros(ByteBuffer buffer, int pos, int to) {
+        pos = skipSpaces(buffer, pos, to);
+        if (pos >= to || (buffer.get(pos) != '=' && buffer.get(pos) != ':')) {
+            return -1;
+        }
+        pos = skipSpaces(buffer, pos + 1, to);
+
+        long whole = 0;
+        int digits = 0;
+        while (pos < to && isDigit(buffer.get(pos))) {
+            whole = Math.min(MAX_WHOLE_UNITS, whole * 10 + (buffer.get(pos) - '0'));
+            digits++;
+            pos++;
+        }
+        // Fraction in millionths of the unit
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (pos < to && buffer.get(pos) == '.') {
+            pos++;
+            while (pos < to && isDigit(buffer.get(pos))) {
+                if (fractionDigits < 6) {
+                    fraction = fraction * 10 + (buffer.get(pos) - '0');
+                    fractionDigits++;
+                }
+                digits++;
+                pos++;
+            }
+        }
+        if (digits == 0) {
+            return -1;
+        }
+        for (int i = fractionDigits; i < 6; i++) {
+            fraction *= 10;
+        }
+
+        long unitNanos = unitNanos(buffer, pos, unitEnd(buffer, pos, to));
+        if (unitNanos == 0) {
+            // A unit after a space, as in "took=12 ms"; otherwise "took=12 for ..." is milliseconds
+            int unitStart = skipSpaces(buffer, pos, to);
+            unitNanos = unitNanos(buffer, unitStart, unitEnd(buffer, unitStart, to));
+            if (unitNanos <= 0) {
+                unitNanos = 1_000_000;
+            }
+        }
+        if (unitNanos < 0) {
+            return -1;
+        }
+        return (whole * unitNanos + fraction * unitNanos / 1_000_000) / 1_000;
+    }
+
+    private static int unitEnd(ByteBuffer buffer, int pos, int to) {
+        while (pos < to && !isWordEnd(buffer.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Nanoseconds per unit for the unit in pos..end, 0 when there is none and -1 when it is not a time unit
+     */
+    private static long unitNanos(ByteBuffer buffer, int pos, int end) {
+        int length = end - pos;
+        if (length == 0) {
+            return 0;
+        }
+        byte first = buffer.get(pos);
+        byte second = length > 1 ? buffer.get(pos + 1) : 0;
+        if (length == 1 && first == 's') {
+            return 1_000_000_000;
+        }
+        if (length == 3 && first == 's' && second == 'e' && buffer.get(pos + 2) == 'c') {
+            return 1_000_000_000;
+        }
+        if (length == 2 && second == 's') {
+            return switch (first) {
+                case 'm' -> 1_000_000;
+                case 'u' -> 1_000;
+                case 'n' -> 1;
+                default -> -1;
+            };
+        }
+        // "µs" is 0xC2 0xB5 's' in UTF-8
+        if (length == 3 && first == (byte) 0xC2 && second == (byte) 0xB5 && buffer.get(pos + 2) == 's') {
+            return 1_000;
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int pos, int to) {
+        while (pos < to && buffer.get(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWordByte(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_';
+    }
+
+    // Units end at whitespace or punctuation, e.g. "took=12ms," or "(took 3ms)"
+    private static boolean isWordEnd(byte b) {
+        return !isWordByte(b) && b >= 0;
+    }
+
+    /**
+     * One row of the report
+     *
+     * @param latencies null when no line in the bucket had a latency
+     */
+    public record Bucket(String period, long lines, long errors, LatencyHistogram latencies) {
+
+        public double errorRate() {
+            return lines == 0 ? 0 : (errors * 100.0) / lines;
+        }
+    }
+
+    /**
+     * The buckets with at least one line, oldest first
+     */
+    public List<Bucket> getBuckets() {
+        List<Bucket> buckets = new ArrayList<>();
+        for (long key : lineCounts.keys()) {
+            buckets.add(new Bucket(periodOf(key), lineCounts.get(key), errorCounts.get(key), latencies.get(key)));
+        }
+        return buckets;
+    }
+
+    // Start of the bucket, to the second only when the width is not whole minutes: "2024-12-09 10:05"
+    private String periodOf(long key) {
+        long second = key * widthSeconds;
+        String date = LocalDate.ofEpochDay(Math.floorDiv(second, ParsedLine.SECONDS_PER_DAY)).toString();
+        if (widthSeconds % ParsedLine.SECONDS_PER_DAY == 0) {
+            return date;
+        }
+        long secondOfDay = Math.floorMod(second, ParsedLine.SECONDS_PER_DAY);
+        String time = twoDigits(secondOfDay / 3600) + ":" + twoDigits(secondOfDay / 60 % 60);
+        return date + " " + (widthSeconds % 60 == 0 ? time : time + ":" + twoDigits(secondOfDay % 60));
+    }
+
+    private static String twoDigits(long value) {
+        return value < 10 ? "0" + value : Long.toString(value);
+    }
+
+    public LatencyHistogram getTotalLatencies() {
+        return totalLatencies;
+    }
+
+    public String getLatencyField() {
+        return latencyField;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    public long getTotalErrors() {
+        return totalErrors;
+    }
+
+    /**
+     * Matching lines left out of the buckets because they have no date
+     */
+    public long getUndatedLines() {
+        return undatedLines;
+    }
+}
@@ -0,0 +1,214 @@
+package com.woo.loganalyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Counts per integer key (an epoch hour, day or bucket) in a long[] indexed by
+ * the key's offset from the lowest key seen, growing in either direction.
+ * Logs cover a narrow, dense range of hours, so this replaces a map of
+ * boxed counts with an array increment. Keys that would stretch the
+ * array beyond MAX_SPAN slots (a stray far-off date) are kept in a
+ * small map instead.
+ */
+public class BucketCounts {
+
+    private static final int MAX_SPAN = 1 << 20;
+    private static final int MIN_SIZE = 64;
+
+    private long base;
+    private long[] counts = new long[0];
+    private Map<Long, Long> outliers;
+
+    public void add(long key) {
+        long index = key - base;
+        if (index < 0 || index >= counts.length) {
+            if (!cover(key)) {
+                outliers().merge(key, 1L, Long::sum);
+                return;
+            }
+            index = key - base;
+        }
+        counts[(int) index]++;
+    }
+
+    public void add(long key, long count) {
+        if (count == 0) {
+            return;
+        }
+        long index = key - base;
+        if (index < 0 || index >= counts.length) {
+            if (!cover(key)) {
+                outliers().merge(key, count, Long::sum);
+                return;
+            }
+            index = key - base;
+        }
+        counts[(int) index] += count;
+    }
+
+    /**
+     * Grow the array to include key
+     *
+     * @return false if that would make it too large
+     */
+    private boolean cover(long key) {
+        if (counts.length == 0) {
+            base = key - MIN_SIZE / 2;
+            counts = new long[MIN_SIZE];
+            return true;
+        }
+
+        long low = Math.min(base, key);
+        long high = Math.max(base + counts.length - 1, key);
+        if (high - low + 1 > MAX_SPAN) {
+            return false;
+        }
+        // At least double, with the slack on the side that grew
+        int length = (int) Math.min(MAX_SPAN, Math.max(high - low + 1, counts.length * 2L));
+        long newBase = key < base ? high - length + 1 : low;
+        long[] grown = new long[length];
+        System.arraycopy(counts, 0, grown, (int) (base - newBase), counts.length);
+        base = newBase;
+        counts = grown;
+        return true;
+    }
+
+    private Map<Long, Long> outliers() {
+        if (outliers == null) {
+            outliers = new HashMap<>();
+        }
+        return outliers;
+    }
+
+    public void merge(BucketCounts other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            add(other.base + i, other.counts[i]);
+        }
+        if (other.outliers != null) {
+            other.outliers.forEach(this::add);
+        }
+    }
+
+    public long get(long key) {
+        long index = key - base;
+        if (index >= 0 && index < counts.length) {
+            return counts[(int) index];
+        }
+        return outliers != null ? outliers.getOrDefault(key, 0L) : 0;
+    }
+
+    /**
+     * Number of keys with a non-zero count
+     */
+    public int size() {
+        int size = outliers != null ? outliers.size() : 0;
+        for (long count : counts) {
+            if (count != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Lowest key with a count, or Long.MAX_VALUE if empty
+     */
+    public long firstKey() {
+        long first = Long.MAX_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                first = base + i;
+                break;
+            }
+        }
+        if (outliers != null) {
+            for (long key : outliers.keySet()) {
+                first = Math.min(first, key);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Highest key with a count, or Long.MIN_VALUE if empty
+     */
+    public long lastKey() {
+        long last = Long.MIN_VALUE;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                last = base + i;
+                break;
+            }
+        }
+        if (outliers != null) {
+            for (long key : outliers.keySet()) {
+                last = Math.max(last, key);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * The keys with a non-zero count, ascending
+     */
+    public long[] keys() {
+        long[] keys = new long[size()];
+        int i = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                keys[i++] = base + slot;
+            }
+        }
+        if (outliers != null) {
+            for (long key : outliers.keySet()) {
+                keys[i++] = key;
+            }
+            Arrays.sort(keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Write the non-zero counts as (key, count) pairs
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeLong(base + i);
+                out.writeLong(counts[i]);
+            }
+        }
+        if (outliers != null) {
+            for (Map.Entry<Long, Long> entry : outliers.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            add(in.readLong(), in.readLong());
+        }
+    }
+
+    /**
+     * The non-zero counts by formatted key, inserted in ascending key order
+     */
+    public Map<String, Long> toMap(LongFunction<String> format) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (long key : keys()) {
+            map.put(format.apply(key), get(key));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,396 @@
+package com.woo.loganalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds bursts in the per-minute line counts of each level and each
+ * message template, in the same pass as the other reports and in
+ * --follow mode.
+ *
+ * Every series keeps an exponentially weighted mean and variance of its
+ * count per minute (a baseline of roughly the last half hour). A minute
+ * is part of a burst when its count reaches the baseline plus Z standard
+ * deviations, and at least MIN_LINES. For quiet series the deviation is
+ * measured on the square root of the counts (the Anscombe transform of
+ * Poisson counts), so random spikes of a few lines are not bursts. Since
+ * the count of the current minute only grows, a burst is flagged on the
+ * line that crosses the threshold, without waiting for the minute to end.
+ * The baseline is held while a burst lasts and the burst ends at the
+ * first minute back below the threshold; a burst longer than
+ * MAX_BURST_MINUTES is taken as the new normal. Minutes without lines
+ * count as zero, and a template first seen mid-log starts from a zero
+ * baseline, so a new error message arriving in a storm is a burst too.
+ *
+ * State per series is a handful of numbers, plus a small sketch of the
+ * top messages while it is bursting. Lines must arrive in time order
+ * (a line from an earlier minute counts towards the current one), so
+ * the detector is a {@link LineSink} fed by one sequential scan and has
+ * no partial results to merge.
+ */
+public class BurstDetector implements LineSink {
+
+    static final double Z = 4.0;
+    static final long MIN_LINES = 10;
+    static final int MAX_BURST_MINUTES = 60;
+
+    // Smoothing for a baseline over about 30 minutes, and minutes seen before bursts are reported
+    private static final double ALPHA = 2.0 / (30 + 1);
+    private static final int WARMUP_MINUTES = 10;
+    // After this many empty minutes a baseline is as good as zero
+    private static final int MAX_GAP_UPDATES = 200;
+    private static final int TOP_MESSAGE_COUNTERS = 32;
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final Series[] levelSeries = new Series[LEVELS.length];
+    private final List<Series> templateSeries = new ArrayList<>();
+    private final TemplateMiner templates = new TemplateMiner();
+
+    private final List<Burst> bursts = new ArrayList<>();
+    // Bursts started or ended since the last takeEvents(), for --follow
+    private final List<Burst> events = new ArrayList<>();
+
+    private long firstMinute = Long.MIN_VALUE;
+    private long lastMinute = Long.MIN_VALUE;
+    private long undatedLines;
+
+    public BurstDetector() {
+        for (LogLevel level : LEVELS) {
+            levelSeries[level.ordinal()] = new Series(level.name() + " lines", -1);
+        }
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        if (!line.hasDate()) {
+            undatedLines++;
+            return;
+        }
+        long minute = Math.floorDiv(line.epochSecond(), 60);
+        if (firstMinute == Long.MIN_VALUE) {
+            firstMinute = minute;
+        }
+        lastMinute = Math.max(lastMinute, minute);
+
+        String message = line.message();
+        String template = null;
+        if (message != null) {
+            int number = templates.add(message);
+            if (number == templateSeries.size()) {
+                templateSeries.add(new Series(null, number));
+            }
+            template = templates.templateText(number);
+            templateSeries.get(number).add(minute, message);
+        }
+        if (line.level() != null) {
+            levelSeries[line.level().ordinal()].add(minute, template);
+        }
+    }
+
+    @Override
+    public boolean needsText() {
+        return false;
+    }
+
+    /**
+     * Close every series at the newest minute seen, ending the bursts still open; call once at the end of a scan
+     */
+    public void finish() {
+        if (lastMinute == Long.MIN_VALUE) {
+            return;
+        }
+        for (Series series : allSeries()) {
+            series.advanceTo(lastMinute + 1);
+            if (series.burst != null) {
+                series.endBurst(lastMinute + 1);
+            }
+        }
+    }
+
+    /**
+     * Close the minutes before the newest one seen, so that series that went quiet end their bursts.
+     * For --follow, where lines of the newest minute may still arrive.
+     */
+    public void closeQuietMinutes() {
+        if (lastMinute == Long.MIN_VALUE) {
+            return;
+        }
+        for (Series series : allSeries()) {
+            series.advanceTo(lastMinute);
+        }
+    }
+
+    private List<Series> allSeries() {
+        List<Series> all = new ArrayList<>(List.of(levelSeries));
+        all.addAll(templateSeries);
+        return all;
+    }
+
+    /**
+     * Bursts started or ended since the previous call (an ended burst has an end), oldest first
+     */
+    public List<Burst> takeEvents() {
+        List<Burst> taken = new ArrayList<>(events);
+        events.clear();
+        return taken;
+    }
+
+    /**
+     * Ended bursts in order of their start
+     */
+    public List<Burst> getBursts() {
+        List<Burst> sorted = new ArrayList<>(bursts);
+        sorted.sort((a, b) -> Long.compare(a.startMinute, b.startMinute));
+        return sorted;
+    }
+
+    /**
+     * Number of levels that occurred
+     */
+    public int getLevelSeriesCount() {
+        int watched = 0;
+        for (Series series : levelSeries) {
+            if (series.lines > 0) {
+                watched++;
+            }
+        }
+        return watched;
+    }
+
+    public int getTemplateSeriesCount() {
+        return templateSeries.size();
+    }
+
+    public long getUndatedLines() {
+        return undatedLines;
+    }
+
+    /**
+     * Count per minute of one level or template, with its baseline
+     */
+    private final class Series {
+
+        private final String name;
+        private final int template;
+
+        private double mean;
+        private double variance;
+        private long minutesSeen;
+        // Count a minute needs to be part of a burst; unreachable until warmed up
+        private long threshold = Long.MAX_VALUE;
+
+        private long lines;
+        private long openMinute = Long.MIN_VALUE;
+        private long openCount;
+        private Burst burst;
+
+        /**
+         * @param template template number, or -1 for a level series
+         */
+        Series(String name, int template) {
+            this.name = name;
+            this.template = template;
+        }
+
+        void add(long minute, String topKey) {
+            if (openMinute == Long.MIN_VALUE) {
+                // Zero since the log's first minute, so a series that starts in a storm is a burst
+                openMinute = firstMinute;
+            }
+            if (minute > openMinute) {
+                advanceTo(minute);
+            }
+            lines++;
+            openCount++;
+            if (burst == null && openCount >= threshold) {
+                startBurst();
+            }
+            if (burst != null && topKey != null) {
+                burst.messages.offer(topKey);
+            }
+        }
+
+        /**
+         * Close the open minute and the empty ones after it, up to minute
+         */
+        void advanceTo(long minute) {
+            if (openMinute == Long.MIN_VALUE || minute <= openMinute) {
+                return;
+            }
+            close(openMinute, openCount);
+            long empty = minute - openMinute - 1;
+            if (empty > 0 && burst != null) {
+                endBurst(openMinute + 1);
+            }
+            for (long i = 0; i < Math.min(empty, MAX_GAP_UPDATES); i++) {
+                observe(0);
+            }
+            minutesSeen += Math.max(0, empty - MAX_GAP_UPDATES);
+            openMinute = minute;
+            openCount = 0;
+            updateThreshold();
+        }
+
+        private void close(long minute, long count) {
+            if (burst != null) {
+                if (count >= threshold) {
+                    burst.addMinute(minute, count, sigma());
+                    if (burst.minutes() >= MAX_BURST_MINUTES) {
+                        // A level shift rather than a burst: start the baseline over from here
+                        endBurst(minute + 1);
+                        mean = count;
+                        variance = count;
+                    }
+                    return;
+                }
+                endBurst(minute);
+            }
+            observe(count);
+        }
+
+        private void startBurst() {
+            burst = new Burst(label(), openMinute, mean);
+            events.add(burst);
+        }
+
+        void endBurst(long endMinute) {
+            burst.endMinute = endMinute;
+            bursts.add(burst);
+            events.add(burst);
+            burst = null;
+            updateThreshold();
+        }
+
+        private void observe(long count) {
+            if (minutesSeen == 0 && count > 0) {
+                mean = count;
+                variance = count;
+            } else {
+                double diff = count - mean;
+                double increment = ALPHA * diff;
+                mean += increment;
+                variance = (1 - ALPHA) * (variance + diff * increment);
+            }
+            minutesSeen++;
+        }
+
+        private void updateThreshold() {
+            if (minutesSeen < WARMUP_MINUTES) {
+                threshold = Long.MAX_VALUE;
+            } else {
+                // Counts of a quiet series are Poisson-like, with a long upper tail that a plain
+                // z-score flags every few hours; the square-root transform evens it out
+                double poisson = Math.pow(Math.sqrt(mean + 0.375) + Z / 2, 2) - 0.375;
+                threshold = Math.max(MIN_LINES, (long) Math.ceil(Math.max(mean + Z * sigma(), poisson)));
+            }
+        }
+
+        private double sigma() {
+            return Math.sqrt(Math.max(1, Math.max(variance, mean)));
+        }
+
+        private String label() {
+            return name != null ? name : "template \"" + templates.templateText(template) + "\"";
+        }
+    }
+
+    /**
+     * A run of consecutive minutes in which one series was over its threshold
+     */
+    public static final class Burst {
+
+        private final String series;
+        private final long startMinute;
+        private long endMinute = Long.MIN_VALUE;
+        private final double expected;
+        private final HeavyHitters messages = new HeavyHitters(TOP_MESSAGE_COUNTERS);
+        private long lines;
+        private long minutes;
+        private long peak;
+        private long peakMinute;
+        private double peakScore;
+
+        Burst(String series, long startMinute, double expected) {
+            this.series = series;
+            this.startMinute = startMinute;
+            this.expected = expected;
+        }
+
+        void addMinute(long minute, long count, double sigma) {
+            lines += count;
+            minutes++;
+            if (count > peak) {
+                peak = count;
+                peakMinute = minute;
+                peakScore = (count - expected) / sigma;
+            }
+        }
+
+        long minutes() {
+            return minutes;
+        }
+
+        /**
+         * Level ("ERROR lines") or template the burst is in
+         */
+        public String getSeries() {
+            return series;
+        }
+
+        public boolean isEnded() {
+            return endMinute != Long.MIN_VALUE;
+        }
+
+        /**
+         * First minute of the burst, as epoch minutes
+         */
+        public long getStartMinute() {
+            return startMinute;
+        }
+
+        /**
+         * Minute after the last one of the burst, as epoch minutes; only once ended
+         */
+        public long getEndMinute() {
+            return endMinute;
+        }
+
+        /**
+         * Lines in the burst's finished minutes
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        public long getPeak() {
+            return peak;
+        }
+
+        public long getPeakMinute() {
+            return peakMinute;
+        }
+
+        /**
+         * Baseline count per minute the burst was measured against
+         */
+        public double getExpected() {
+            return expected;
+        }
+
+        /**
+         * Standard deviations above the baseline at the peak minute
+         */
+        public double getPeakScore() {
+            return peakScore;
+        }
+
+        /**
+         * Most frequent messages (by template for a level) seen from the line the burst was detected on
+         */
+        public List<Map.Entry<String, Long>> topMessages(int n) {
+            return messages.top(n);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.woo.loganalyzer;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToLongFunction;
 
 public class CSVExporter {
 
@@ -14,19 +16,23 @@ public class CSVExporter {
         this.filename = filename;
     }
 
+    private PrintWriter open() throws IOException {
+        return new PrintWriter(new BufferedWriter(new FileWriter(filename), 64 * 1024));
+    }
+
     /**
      * Export log level statistics to CSV
      * Format: Level,Count,Percentage
      */
-    public void exportLevelStats(Map<String, Integer> levelCounts, int totalLogs) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+    public void exportLevelStats(Map<String, Long> levelCounts, long totalLogs) throws IOException {
+        try (PrintWriter writer = open()) {
             // Write header
             writer.println("Level,Count,Percentage");
 
             // Write data rows
-            for (Map.Entry<String, Integer> entry : levelCounts.entrySet()) {
+            for (Map.Entry<String, Long> entry : levelCounts.entrySet()) {
                 String level = entry.getKey();
-                int count = entry.getValue();
+                long count = entry.getValue();
                 double percentage = (count * 100.0) / totalLogs;
 
                 writer.printf("%s,%d,%.2f%%\n", level, count, percentage);
@@ -40,8 +46,8 @@ public class CSVExporter {
      * Export time-based statistics to CSV
      * Format: Period,Count
      */
-    public void exportTimeStats(Map<String, Integer> timeCounts, String timeType) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+    public void exportTimeStats(Map<String, Long> timeCounts, String timeType) throws IOException {
+        try (PrintWriter writer = open()) {
             // Write header
             writer.println(timeType + ",Count");
 
@@ -58,21 +64,104 @@ public class CSVExporter {
      * Export top N messages to CSV
      * Format: Message,Count,Percentage
      */
-    public void exportTopMessages(List<Map.Entry<String, Integer>> topMessages, int totalLogs) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+    public void exportTopMessages(List<Map.Entry<String, Long>> topMessages, long totalLogs) throws IOException {
+        exportTopMessages(topMessages, totalLogs, null);
+    }
+
+    /**
+     * Export approximate top N messages to CSV with the error bound of each count
+     * Format: Message,Count,Error,Percentage (Error omitted when errorBounds is null)
+     */
+    public void exportTopMessages(List<Map.Entry<String, Long>> topMessages, long totalLogs,
+                                  ToLongFunction<String> errorBounds) throws IOException {
+        try (PrintWriter writer = open()) {
             // Write header
-            writer.println("Message,Count,Percentage");
+            writer.println(errorBounds != null ? "Message,Count,Error,Percentage" : "Message,Count,Percentage");
 
             // Write data rows
-            for (Map.Entry<String, Integer> entry : topMessages) {
+            for (Map.Entry<String, Long> entry : topMessages) {
                 String message = entry.getKey().replace(",", ";"); // Escape commas in messages
-                int count = entry.getValue();
+                long count = entry.getValue();
                 double percentage = (count * 100.0) / totalLogs;
 
-                writer.printf("\"%s\",%d,%.2f%%\n", message, count, percentage);
+                if (errorBounds != null) {
+                    writer.printf("\"%s\",%d,%d,%.2f%%\n", message, count,
+                            errorBounds.applyAsLong(entry.getKey()), percentage);
+                } else {
+                    writer.printf("\"%s\",%d,%.2f%%\n", message, count, percentage);
+                }
             }
 
             System.out.println("Top messages exported to: " + filename);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Export the summary report to CSV, one row per figure
+     * Format: Section,Name,Value,Percentage
+     */
+    public void exportSummary(LogStatistics stats, int topCount) throws IOException {
+        long totalLogs = stats.getTotalLogs();
+        Map<String, Long> levelCounts = stats.getLevelCounts();
+
+        try (PrintWriter writer = open()) {
+            writer.println("Section,Name,Value,Percentage");
+
+            writer.println("Overview,Total logs," + totalLogs + ",");
+            writer.println("Overview,First date," + stats.getFirstDate() + ",");
+            writer.println("Overview,Last date," + stats.getLastDate() + ",");
+            writer.println("Overview,Unique dates," + stats.getDateCounts().size() + ",");
+            writer.println("Overview," + (stats.isCountingTemplates() ? "Unique message templates" : "Unique messages")
+                    + "," + stats.getUniqueMessages() + ",");
+
+            levelCounts.entrySet().stream()
+                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
+                    .forEach(entry -> writer.printf("Level,%s,%d,%.2f%%\n",
+                            entry.getKey(), entry.getValue(), entry.getValue() * 100.0 / totalLogs));
+
+            for (Map.Entry<String, Long> entry : TopN.of(stats.getDateCounts(), topCount)) {
+                writer.printf("Busiest date,%s,%d,%.2f%%\n",
+                        entry.getKey(), entry.getValue(), entry.getValue() * 100.0 / totalLogs);
+            }
+
+            String section = stats.isCountingTemplates() ? "Top template" : "Top message";
+            for (Map.Entry<String, Long> entry : stats.topMessages(topCount)) {
+                String message = "\"" + entry.getKey().replace("\"", "\"\"") + "\"";
+                writer.printf("%s,%s,%d,%.2f%%\n",
+                        section, message, entry.getValue(), entry.getValue() * 100.0 / totalLogs);
+            }
+
+            long errorCount = levelCounts.getOrDefault("ERROR", 0L);
+            long warnCount = levelCounts.getOrDefault("WARN", 0L);
+            writer.printf("Health,Errors,%d,%.2f%%\n", errorCount, errorCount * 100.0 / totalLogs);
+            writer.printf("Health,Warnings,%d,%.2f%%\n", warnCount, warnCount * 100.0 / totalLogs);
+
+            System.out.println("Summary exported to: " + filename);
+        }
+    }
+
+    /**
+     * Export the --bucket report to CSV, latency columns in milliseconds (empty when a bucket has none)
+     * Format: Bucket,Lines,Errors,ErrorRate,Latencies,P50Ms,P95Ms,P99Ms,MaxMs
+     */
+    public void exportBuckets(List<BucketAnalytics.Bucket> buckets) throws IOException {
+        try (PrintWriter writer = open()) {
+            writer.println("Bucket,Lines,Errors,ErrorRate,Latencies,P50Ms,P95Ms,P99Ms,MaxMs");
+
+            for (BucketAnalytics.Bucket bucket : buckets) {
+                writer.printf("%s,%d,%d,%.2f%%,", bucket.period(), bucket.lines(), bucket.errors(),
+                        bucket.errorRate());
+                LatencyHistogram latencies = bucket.latencies();
+                if (latencies != null) {
+                    long[] percentiles = latencies.percentiles(50, 95, 99);
+                    writer.printf("%d,%.3f,%.3f,%.3f,%.3f\n", latencies.getTotalCount(), percentiles[0] / 1000.0,
+                            percentiles[1] / 1000.0, percentiles[2] / 1000.0, latencies.getMaxValue() / 1000.0);
+                } else {
+                    writer.println("0,,,,");
+                }
+            }
+
+            System.out.println("Bucket statistics exported to: " + filename);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Compression format of a log file, recognized by its magic bytes
+ * rather than its extension.
+ */
+public enum Compression {
+
+    NONE(null),
+    GZIP("gzip"),
+    ZSTD("zstd"),
+    LZ4("lz4");
+
+    private final String displayName;
+
+    Compression(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * True for formats that can be read without extra libraries
+     */
+    public boolean isSupported() {
+        return this == NONE || this == GZIP;
+    }
+
+    public static Compression detect(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int read = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while (read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0) {
+                read += n;
+            }
+        }
+
+        if (read >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (read == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return ZSTD;
+        }
+        if (read == 4 && (magic[0] & 0xFF) == 0x04 && (magic[1] & 0xFF) == 0x22
+                && (magic[2] & 0xFF) == 0x4D && (magic[3] & 0xFF) == 0x18) {
+            return LZ4;
+        }
+        return NONE;
+    }
+}
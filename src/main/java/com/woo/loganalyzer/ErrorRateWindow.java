@@ -0,0 +1,93 @@
+package com.woo.loganalyzer;
+
+import java.util.Arrays;
+
+/**
+ * Error rate over a sliding window of log time, kept as one bucket per second.
+ * Lines without a timestamp count towards the newest second seen.
+ */
+public class ErrorRateWindow implements LineAggregator<ErrorRateWindow> {
+
+    private final int windowSeconds;
+    private final long[] bucketSecond;
+    private final long[] totals;
+    private final long[] errors;
+    private long newestSecond = Long.MIN_VALUE;
+
+    public ErrorRateWindow(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.bucketSecond = new long[windowSeconds];
+        this.totals = new long[windowSeconds];
+        this.errors = new long[windowSeconds];
+        Arrays.fill(bucketSecond, Long.MIN_VALUE);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        long second = line.hasDate() ? line.epochSecond() : newestSecond;
+        if (second == Long.MIN_VALUE) {
+            return; // Nothing timestamped seen yet
+        }
+        add(second, 1, line.level() == LogLevel.ERROR ? 1 : 0);
+    }
+
+    @Override
+    public void merge(ErrorRateWindow next, long lineOffset) {
+        for (int i = 0; i < windowSeconds; i++) {
+            if (next.bucketSecond[i] != Long.MIN_VALUE) {
+                add(next.bucketSecond[i], next.totals[i], next.errors[i]);
+            }
+        }
+    }
+
+    private void add(long second, long total, long errorCount) {
+        if (second > newestSecond) {
+            newestSecond = second;
+        }
+        if (second <= newestSecond - windowSeconds) {
+            return; // Already slid out of the window
+        }
+
+        int slot = (int) Math.floorMod(second, (long) windowSeconds);
+        if (bucketSecond[slot] != second) {
+            bucketSecond[slot] = second;
+            totals[slot] = 0;
+            errors[slot] = 0;
+        }
+        totals[slot] += total;
+        errors[slot] += errorCount;
+    }
+
+    public long getTotal() {
+        long sum = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            if (inWindow(i)) {
+                sum += totals[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Percentage of ERROR lines in the window, 0 when the window is empty
+     */
+    public double getErrorRate() {
+        long total = 0;
+        long errorCount = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            if (inWindow(i)) {
+                total += totals[i];
+                errorCount += errors[i];
+            }
+        }
+        return total == 0 ? 0 : (errorCount * 100.0) / total;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    private boolean inWindow(int slot) {
+        return bucketSecond[slot] != Long.MIN_VALUE && bucketSecond[slot] > newestSecond - windowSeconds;
+    }
+}
@@ -0,0 +1,381 @@
+package com.woo.loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Scans a gzip-compressed log without decompressing it to disk.
+ * Inflation runs on a background thread while lines are parsed.
+ *
+ * Files made of several gzip members (bgzip, pigz --independent, or
+ * concatenated archives) are split at member headers and the members are
+ * inflated and scanned in parallel. Header positions are found by
+ * looking for the gzip magic bytes, which may also occur inside
+ * compressed data; if any segment fails to inflate cleanly the file is
+ * scanned sequentially instead. Members far apart (a few large
+ * concatenated archives) may not be found, and such files are scanned
+ * with fewer segments.
+ */
+public class GzipScanner {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Compressed bytes per parallel segment, at least
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+
+    private final File logFile;
+    private final int threads;
+    private final LogFormat format;
+
+    public GzipScanner(File logFile, int threads) {
+        this(logFile, threads, LogFormat.DEFAULT);
+    }
+
+    public GzipScanner(File logFile, int threads, LogFormat format) {
+        this.logFile = logFile;
+        this.threads = threads;
+        this.format = format;
+    }
+
+    public long countLines() throws IOException {
+        long count = 0;
+        try (BackgroundChunkReader chunks = open()) {
+            ByteBuffer chunk;
+            while ((chunk = chunks.next()) != null) {
+                count += MappedLineReader.countLines(chunk);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Same contract as {@link LogScanner#scan(LogFilter, LineAggregator, Supplier)}
+     */
+    public <T extends LineAggregator<T>> long scan(LogFilter filter, T root, Supplier<T> factory)
+            throws IOException {
+        if (threads > 1) {
+            List<Long> starts = memberStarts();
+            if (starts.size() > 1) {
+                List<Segment<T>> segments = scanSegments(starts, filter, factory);
+                if (segments != null) {
+                    return mergeSegments(segments, filter, root);
+                }
+            }
+        }
+        return scan(filter, root);
+    }
+
+    /**
+     * Same contract as {@link LogScanner#scan(LogFilter, LineSink)}
+     */
+    public long scan(LogFilter filter, LineSink sink) throws IOException {
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        long lineNumber = 0;
+        long offset = 0;
+
+        try (BackgroundChunkReader chunks = open()) {
+            ByteBuffer chunk;
+            while ((chunk = chunks.next()) != null) {
+                MappedLineReader reader = new MappedLineReader(chunk);
+                line.bufferOffset = offset;
+                while (reader.next()) {
+                    lineNumber++;
+                    parser.parse(chunk, reader.lineStart(), reader.lineEnd(), line);
+                    if (filter.matches(line)) {
+                        sink.accept(line, lineNumber);
+                    }
+                }
+                offset += chunk.limit();
+            }
+        }
+        return lineNumber;
+    }
+
+    /**
+     * Open the decompressed stream, inflated on a background thread
+     */
+    public BackgroundChunkReader open() throws IOException {
+        InputStream in = new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(logFile), BUFFER_SIZE), BUFFER_SIZE);
+        return new BackgroundChunkReader(in, "gunzip-" + logFile.getName());
+    }
+
+    private <T extends LineAggregator<T>> List<Segment<T>> scanSegments(List<Long> starts, LogFilter filter,
+                                                                         Supplier<T> factory) {
+        long size = logFile.length();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, starts.size()));
+        try {
+            List<Future<Segment<T>>> futures = new ArrayList<>();
+            for (int i = 0; i < starts.size(); i++) {
+                long start = starts.get(i);
+                long end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+                boolean first = i == 0;
+                futures.add(pool.submit(() -> scanSegment(start, end, first, filter, factory.get())));
+            }
+
+            List<Segment<T>> segments = new ArrayList<>();
+            for (Future<Segment<T>> future : futures) {
+                segments.add(future.get());
+            }
+            return segments;
+        } catch (Exception e) {
+            // A false member boundary (or a damaged file): let the sequential scan decide
+            return null;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Inflate and scan one segment of members. Except in the first segment,
+     * the bytes before the first newline belong to a line that started in
+     * the previous segment, and the bytes after the last newline to one
+     * that continues in the next; both are returned for stitching.
+     */
+    private <T extends LineAggregator<T>> Segment<T> scanSegment(long start, long end, boolean first,
+                                                                  LogFilter filter, T part) throws IOException {
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        byte[] head = null;
+        boolean headEndsLine = false;
+        byte[] tail = new byte[0];
+        long lineNumber = 0;
+
+        try (InputStream in = new GZIPInputStream(
+                new BufferedInputStream(new RegionInputStream(logFile, start, end), BUFFER_SIZE), BUFFER_SIZE)) {
+            LineChunker chunker = new LineChunker(in);
+            ByteBuffer chunk;
+            while ((chunk = chunker.next()) != null) {
+                int from = 0;
+                int to = chunk.limit();
+
+                if (!first && head == null) {
+                    int newline = indexOf(chunk, from, to);
+                    head = bytes(chunk, from, newline >= 0 ? newline : to);
+                    if (newline < 0) {
+                        break; // No newline in the whole segment
+                    }
+                    headEndsLine = true;
+                    from = newline + 1;
+                }
+                if (to > from && chunk.get(to - 1) != '\n') {
+                    // Only the last chunk can end mid-line
+                    int newline = to - 1;
+                    while (newline >= from && chunk.get(newline) != '\n') {
+                        newline--;
+                    }
+                    tail = bytes(chunk, newline + 1, to);
+                    to = newline + 1;
+                }
+
+                ByteBuffer lines = chunk.slice(from, to - from);
+                MappedLineReader reader = new MappedLineReader(lines);
+                while (reader.next()) {
+                    lineNumber++;
+                    parser.parse(lines, reader.lineStart(), reader.lineEnd(), line);
+                    if (filter.matches(line)) {
+                        part.accept(line, lineNumber);
+                    }
+                }
+            }
+        }
+        if (!first && head == null) {
+            head = new byte[0]; // Empty segment
+        }
+        return new Segment<>(part, lineNumber, head, headEndsLine, tail);
+    }
+
+    private <T extends LineAggregator<T>> long mergeSegments(List<Segment<T>> segments, LogFilter filter, T root) {
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        long lineCount = 0;
+        byte[] pending = new byte[0];
+
+        for (Segment<T> segment : segments) {
+            if (segment.head() != null) {
+                if (!segment.headEndsLine()) {
+                    pending = concat(pending, segment.head()); // Still inside the same line
+                    continue;
+                }
+                lineCount++;
+                acceptStitched(concat(pending, segment.head()), lineCount, filter, root, parser, line);
+            }
+            root.merge(segment.part(), lineCount);
+            lineCount += segment.lines();
+            pending = segment.tail();
+        }
+
+        if (pending.length > 0) {
+            lineCount++;
+            acceptStitched(pending, lineCount, filter, root, parser, line);
+        }
+        return lineCount;
+    }
+
+    private static <T extends LineAggregator<T>> void acceptStitched(byte[] bytes, long lineNumber, LogFilter filter,
+                                                                     T root, LogLineParser parser, ParsedLine line) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int end = bytes.length;
+        if (end > 0 && bytes[end - 1] == '\r') {
+            end--;
+        }
+        line.bufferOffset = 0;
+        parser.parse(buffer, 0, end, line);
+        if (filter.matches(line)) {
+            root.accept(line, lineNumber);
+        }
+    }
+
+    /**
+     * Offsets of gzip member headers that split the file into roughly
+     * equal segments, starting with 0. The search stops at the first
+     * segment without a member header, so a single-member file costs one
+     * segment's worth of reading rather than the whole file.
+     */
+    private List<Long> memberStarts() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+
+        long size = logFile.length();
+        int segments = (int) Math.min(threads, size / MIN_SEGMENT_SIZE);
+        if (segments <= 1) {
+            return starts;
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            for (int i = 1; i < segments; i++) {
+                long from = Math.max(size * i / segments, starts.get(starts.size() - 1) + 1);
+                long to = size * (i + 1) / segments;
+                long header = findMemberHeader(channel, from, to);
+                if (header < 0) {
+                    // Most likely an ordinary single-member file: don't search the rest of it
+                    break;
+                }
+                starts.add(header);
+            }
+        }
+        return starts;
+    }
+
+    private long findMemberHeader(FileChannel channel, long from, long to) throws IOException {
+        if (to - from < 10) {
+            return -1;
+        }
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int limit = bytes.limit() - 10;
+        for (int i = 0; i < limit; i++) {
+            if (looksLikeHeader(bytes, i) && inflates(from + i)) {
+                return from + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * ID1 ID2 CM=deflate, no reserved flags, a known XFL and OS byte
+     */
+    private static boolean looksLikeHeader(ByteBuffer bytes, int i) {
+        if ((bytes.get(i) & 0xFF) != 0x1F || (bytes.get(i + 1) & 0xFF) != 0x8B || bytes.get(i + 2) != 8) {
+            return false;
+        }
+        int flags = bytes.get(i + 3) & 0xFF;
+        int extraFlags = bytes.get(i + 8) & 0xFF;
+        int os = bytes.get(i + 9) & 0xFF;
+        return (flags & 0xE0) == 0 && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4)
+                && (os <= 13 || os == 255);
+    }
+
+    // Cheap check that a candidate header is followed by valid deflate data
+    private boolean inflates(long start) {
+        try (InputStream in = new GZIPInputStream(new RegionInputStream(logFile, start, logFile.length()))) {
+            in.readNBytes(BUFFER_SIZE);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int indexOf(ByteBuffer chunk, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chunk.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(ByteBuffer chunk, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        chunk.get(from, bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    /**
+     * @param head         bytes before the first newline, null for the first segment
+     * @param headEndsLine false if the segment has no newline, so head is all of it
+     * @param tail         bytes after the last newline
+     */
+    private record Segment<T>(T part, long lines, byte[] head, boolean headEndsLine, byte[] tail) {
+    }
+
+    /**
+     * Reads [start, end) of a file
+     */
+    private static final class RegionInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RegionInputStream(File file, long start, long end) throws IOException {
+            super(new FileInputStream(file));
+            in.skipNBytes(start);
+            this.remaining = end - start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
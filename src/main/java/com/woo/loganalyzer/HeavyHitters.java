@@ -0,0 +1,211 @@
+package com.woo.loganalyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch for the most frequent messages in a fixed number of
+ * counters. Once all counters are taken, an unseen message replaces the
+ * smallest one and inherits its count as possible overestimation, so
+ * every reported count is at most {@link #error} too high, and never by
+ * more than total / capacity. Any message seen more often than that is
+ * guaranteed to be tracked.
+ *
+ * Counters live in an array-backed min-heap, so each update is
+ * O(log capacity) regardless of how many distinct messages the log has.
+ */
+public class HeavyHitters {
+
+    private final int capacity;
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> slots;
+    private int size;
+    private long total;
+    private boolean exact = true;
+
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(String key) {
+        total++;
+
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            counts[slot]++;
+            siftDown(slot);
+        } else if (size < capacity) {
+            set(size, key, 1, 0);
+            siftUp(size++);
+        } else {
+            // Replace the smallest counter; its count becomes the new key's error
+            exact = false;
+            long min = counts[0];
+            slots.remove(keys[0]);
+            set(0, key, min + 1, min);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Merge another sketch of the same capacity. A key missing from one side
+     * may have been seen there up to that side's minimum count, which is
+     * added to its count and error bound.
+     */
+    public void merge(HeavyHitters other) {
+        long ownMin = size == capacity ? counts[0] : 0;
+        long otherMin = other.size == other.capacity ? other.counts[0] : 0;
+
+        Map<String, long[]> combined = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            combined.put(keys[i], new long[]{counts[i] + otherMin, errors[i] + otherMin});
+        }
+        for (int i = 0; i < other.size; i++) {
+            long[] entry = combined.get(other.keys[i]);
+            if (entry != null) {
+                entry[0] += other.counts[i] - otherMin;
+                entry[1] += other.errors[i] - otherMin;
+            } else {
+                combined.put(other.keys[i], new long[]{other.counts[i] + ownMin, other.errors[i] + ownMin});
+            }
+        }
+
+        exact = exact && other.exact && combined.size() <= capacity;
+        total += other.total;
+
+        // Keep the largest counters
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        slots.clear();
+        size = 0;
+        for (Map.Entry<String, long[]> entry : entries.subList(0, Math.min(capacity, entries.size()))) {
+            set(size, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            siftUp(size++);
+        }
+    }
+
+    /**
+     * The n largest counters, highest first. Ties are ordered by message
+     * so the result does not depend on update order.
+     */
+    public List<Map.Entry<String, Long>> top(int n) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(keys[i], counts[i]));
+        }
+        entries.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? a.getKey().compareTo(b.getKey())
+                : b.getValue().compareTo(a.getValue()));
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * Upper bound on how much the count of a tracked key is overestimated
+     */
+    public long error(String key) {
+        Integer slot = slots.get(key);
+        return slot != null ? errors[slot] : 0;
+    }
+
+    /**
+     * Upper bound on the overestimation of any count, total / capacity
+     */
+    public long maxError() {
+        return exact ? 0 : total / capacity;
+    }
+
+    /**
+     * True while no message has been evicted, so all counts are exact
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeBoolean(exact);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            LogStatistics.writeString(out, keys[i]);
+            out.writeLong(counts[i]);
+            out.writeLong(errors[i]);
+        }
+    }
+
+    static HeavyHitters read(DataInputStream in) throws IOException {
+        HeavyHitters sketch = new HeavyHitters(in.readInt());
+        sketch.total = in.readLong();
+        sketch.exact = in.readBoolean();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            // Written in heap order, so the heap property still holds
+            sketch.set(i, LogStatistics.readString(in), in.readLong(), in.readLong());
+        }
+        sketch.size = size;
+        return sketch;
+    }
+
+    private void set(int slot, String key, long count, long error) {
+        keys[slot] = key;
+        counts[slot] = count;
+        errors[slot] = error;
+        slots.put(key, slot);
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (counts[parent] <= counts[slot]) {
+                break;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int child = slot * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[child + 1] < counts[child]) {
+                child++;
+            }
+            if (counts[slot] <= counts[child]) {
+                break;
+            }
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String key = keys[a];
+        long count = counts[a];
+        long error = errors[a];
+        set(a, keys[b], counts[b], errors[b]);
+        set(b, key, count, error);
+    }
+}
@@ -0,0 +1,246 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses JSON lines, one object per line, in a single pass over the raw
+ * bytes without building a tree. Only top-level keys are looked at:
+ * the timestamp comes from "timestamp", "@timestamp", "time" or "ts"
+ * (an ISO 8601 string, or epoch seconds or milliseconds as a number),
+ * the level from "level", "severity" or "lvl" and the message from
+ * "message" or "msg". A message without escape sequences stays a range
+ * of the line bytes; one with a backslash is decoded when it is asked for,
+ * so "\"quoted\"" and "\u00e9" are counted and mined as the text they stand for.
+ */
+public class JsonLineParser extends LogLineParser {
+
+    private static final byte[][] TIMESTAMP_KEYS = keys("timestamp", "@timestamp", "time", "ts");
+    private static final byte[][] LEVEL_KEYS = keys("level", "severity", "lvl");
+    private static final byte[][] MESSAGE_KEYS = keys("message", "msg");
+
+    // Epoch numbers with more digits than this are milliseconds
+    private static final int MAX_SECONDS_DIGITS = 11;
+
+    private final ZoneConverter zone;
+
+    JsonLineParser(ZoneConverter zone) {
+        this.zone = zone;
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, int start, int end, ParsedLine line) {
+        line.reset(buffer, start, end);
+
+        int position = skipWhitespace(buffer, start, end);
+        if (position >= end || buffer.get(position) != '{') {
+            return;
+        }
+        position++;
+        while (true) {
+            position = skipWhitespace(buffer, position, end);
+            if (position >= end || buffer.get(position) != '"') {
+                return;
+            }
+            int keyStart = position + 1;
+            int keyEnd = stringEnd(buffer, keyStart, end);
+            if (keyEnd < 0) {
+                return;
+            }
+            position = skipWhitespace(buffer, keyEnd + 1, end);
+            if (position >= end || buffer.get(position) != ':') {
+                return;
+            }
+            position = skipWhitespace(buffer, position + 1, end);
+            if (position >= end) {
+                return;
+            }
+
+            int valueEnd;
+            if (buffer.get(position) == '"') {
+                int valueStart = position + 1;
+                int stringEnd = stringEnd(buffer, valueStart, end);
+                if (stringEnd < 0) {
+                    return;
+                }
+                acceptString(buffer, keyStart, keyEnd, valueStart, stringEnd, line);
+                valueEnd = stringEnd + 1;
+            } else {
+                valueEnd = valueEnd(buffer, position, end);
+                if (valueEnd < 0) {
+                    return;
+                }
+                if (!line.hasDate && isKey(buffer, keyStart, keyEnd, TIMESTAMP_KEYS)) {
+                    acceptEpoch(buffer, position, valueEnd, line);
+                }
+            }
+
+            position = skipWhitespace(buffer, valueEnd, end);
+            if (position >= end || buffer.get(position) != ',') {
+                return; // '}' or malformed
+            }
+            position++;
+        }
+    }
+
+    private void acceptString(ByteBuffer buffer, int keyStart, int keyEnd, int valueStart, int valueEnd,
+                              ParsedLine line) {
+        if (line.level == null && isKey(buffer, keyStart, keyEnd, LEVEL_KEYS)) {
+            line.level = LogLevel.fromBytesIgnoreCase(buffer, valueStart, valueEnd);
+        } else if (line.messageStart < 0 && isKey(buffer, keyStart, keyEnd, MESSAGE_KEYS)) {
+            line.messageStart = valueStart;
+            line.messageLimit = valueEnd;
+            for (int i = valueStart; i < valueEnd; i++) {
+                if (buffer.get(i) == '\\') {
+                    line.messageEscaped = true;
+                    break;
+                }
+            }
+        } else if (!line.hasDate && isKey(buffer, keyStart, keyEnd, TIMESTAMP_KEYS)) {
+            parseTimestamp(buffer, valueStart, valueEnd, line, zone);
+        }
+    }
+
+    /**
+     * The text a JSON string's content stands for; malformed escapes are kept as written
+     */
+    static String unescape(String raw) {
+        StringBuilder text = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                text.append(c);
+                continue;
+            }
+            char escaped = raw.charAt(++i);
+            switch (escaped) {
+                case 'n' -> text.append('\n');
+                case 't' -> text.append('\t');
+                case 'r' -> text.append('\r');
+                case 'b' -> text.append('\b');
+                case 'f' -> text.append('\f');
+                case 'u' -> {
+                    int code = hexValue(raw, i + 1);
+                    if (code >= 0) {
+                        // Surrogate pairs come as two escapes and join up in the string
+                        text.append((char) code);
+                        i += 4;
+                    } else {
+                        text.append("\\u");
+                    }
+                }
+                default -> text.append(escaped); // \" \\ \/ and unknown escapes
+            }
+        }
+        return text.toString();
+    }
+
+    // Value of the four hex digits at position, or -1
+    private static int hexValue(String raw, int position) {
+        if (position + 4 > raw.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = position; i < position + 4; i++) {
+            int digit = Character.digit(raw.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * A numeric timestamp: UTC epoch seconds or milliseconds
+     */
+    private void acceptEpoch(ByteBuffer buffer, int start, int end, ParsedLine line) {
+        long value = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.') {
+                break; // Fraction of a second
+            }
+            if (!isDigit(b)) {
+                return;
+            }
+            value = value * 10 + (b - '0');
+            digits++;
+        }
+        if (digits == 0 || digits > 18) {
+            return;
+        }
+        long epochSecond = digits > MAX_SECONDS_DIGITS ? value / 1000 : value;
+        line.hasDate = true;
+        line.hasTime = true;
+        line.epochSecond = zone != null ? zone.toLocal(epochSecond) : epochSecond;
+    }
+
+    /**
+     * Position of the closing quote of a string whose content starts at position, or -1
+     */
+    private static int stringEnd(ByteBuffer buffer, int position, int end) {
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+                return position;
+            }
+            position += b == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    /**
+     * End of a non-string value (number, literal, object or array), or -1 if it is not closed
+     */
+    private static int valueEnd(ByteBuffer buffer, int position, int end) {
+        int depth = 0;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+                position = stringEnd(buffer, position + 1, end);
+                if (position < 0) {
+                    return -1;
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    return position;
+                }
+                depth--;
+            } else if (depth == 0 && (b == ',' || isWhitespace(b))) {
+                return position;
+            }
+            position++;
+        }
+        return depth == 0 ? end : -1;
+    }
+
+    private static boolean isKey(ByteBuffer buffer, int start, int end, byte[][] keys) {
+        for (byte[] key : keys) {
+            if (key.length == end - start && matchesAt(buffer, start, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAt(ByteBuffer buffer, int position, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[][] keys(String... names) {
+        byte[][] keys = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,142 @@
+package com.woo.loganalyzer;
+
+/**
+ * Latency distribution in microseconds, in the layout HdrHistogram uses:
+ * values below 64 get a slot each, and every power of two above that is
+ * split into 32 linear slots, so a percentile is within about 3% of the
+ * recorded value. Values from 2^36 us (about 19 hours) up share the last
+ * slot. The count array holds at most SLOTS longs (8 KB) however many
+ * values are recorded, and only spans the slots between the smallest and
+ * largest value seen: a few hundred for latencies between 1 ms and 10 s.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int SLOTS = slotOf(MAX_VALUE) + 1;
+
+    // Counts of slots firstSlot .. firstSlot + counts.length - 1
+    private int firstSlot;
+    private long[] counts = new long[0];
+    private long totalCount;
+    private long maxValue;
+
+    public void record(long micros) {
+        int slot = slotOf(Math.min(Math.max(micros, 0), MAX_VALUE));
+        cover(slot, slot);
+        counts[slot - firstSlot]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, micros);
+    }
+
+    public void merge(LatencyHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        cover(other.firstSlot, other.firstSlot + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.firstSlot - firstSlot + i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Grow the count array to include slots low to high, doubling so that widening one slot at a time stays cheap
+     */
+    private void cover(int low, int high) {
+        if (counts.length == 0) {
+            firstSlot = low;
+            counts = new long[high - low + 1];
+            return;
+        }
+        int lastSlot = firstSlot + counts.length - 1;
+        if (low >= firstSlot && high <= lastSlot) {
+            return;
+        }
+        int newFirst = Math.min(firstSlot, low);
+        int newLast = Math.max(lastSlot, high);
+        int length = Math.min(SLOTS, Math.max(newLast - newFirst + 1, counts.length * 2));
+        // The slack goes on the side that grew, within 0 .. SLOTS - 1
+        if (low < firstSlot) {
+            newFirst = Math.max(0, newLast - length + 1);
+        }
+        length = Math.min(length, SLOTS - newFirst);
+        long[] grown = new long[length];
+        System.arraycopy(counts, 0, grown, firstSlot - newFirst, counts.length);
+        firstSlot = newFirst;
+        counts = grown;
+    }
+
+    // Values below 2 * SUB_BUCKETS map to themselves; above, the top SUB_BUCKET_BITS + 1 bits pick the slot
+    private static int slotOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // Largest value that falls into the slot
+    private static long highestValueOf(int slot) {
+        if (slot < 2 * SUB_BUCKETS) {
+            return slot;
+        }
+        int shift = slot / SUB_BUCKETS - 1;
+        long lowest = (long) (slot - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The value at or below which the given percentage of the recorded values fall,
+     * never above the largest recorded value; 0 when empty
+     */
+    public long percentile(double percentage) {
+        return percentiles(percentage)[0];
+    }
+
+    /**
+     * {@link #percentile} of each of the ascending percentages, in one pass over the counts
+     */
+    public long[] percentiles(double... percentages) {
+        long[] values = new long[percentages.length];
+        if (totalCount == 0) {
+            return values;
+        }
+        int next = 0;
+        long rank = rank(percentages[0]);
+        long seen = 0;
+        for (int i = 0; i < counts.length && next < percentages.length; i++) {
+            seen += counts[i];
+            while (seen >= rank) {
+                values[next++] = Math.min(highestValueOf(firstSlot + i), maxValue);
+                if (next == percentages.length) {
+                    break;
+                }
+                rank = rank(percentages[next]);
+            }
+        }
+        while (next < percentages.length) {
+            values[next++] = maxValue;
+        }
+        return values;
+    }
+
+    // Number of values at or below the percentile, at least 1
+    private long rank(double percentage) {
+        return Math.max(1, (long) Math.ceil(percentage / 100.0 * totalCount));
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Bytes held by the count array
+     */
+    public long sizeBytes() {
+        return counts.length * 8L;
+    }
+}
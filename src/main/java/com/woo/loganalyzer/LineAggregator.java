@@ -0,0 +1,16 @@
+package com.woo.loganalyzer;
+
+/**
+ * Accumulates results from the lines that pass the filter.
+ * One instance is created per scanned chunk and the partial results
+ * are merged back in file order.
+ */
+public interface LineAggregator<T extends LineAggregator<T>> extends LineSink {
+
+    /**
+     * Merge the partial result of the chunk that directly follows this one
+     *
+     * @param lineOffset number of lines that precede the merged chunk in the file
+     */
+    void merge(T next, long lineOffset);
+}
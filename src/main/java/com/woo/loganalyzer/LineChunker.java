@@ -0,0 +1,70 @@
+package com.woo.loganalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cuts a byte stream into chunks of whole lines, for input that cannot be
+ * memory-mapped such as a decompressed stream. Only the last chunk may
+ * end without a newline.
+ */
+public class LineChunker {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final InputStream in;
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean eof;
+
+    public LineChunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next chunk, positioned at 0, or null at the end of the stream
+     */
+    public ByteBuffer next() throws IOException {
+        if (eof && carryLength == 0) {
+            return null;
+        }
+
+        byte[] chunk = new byte[Math.max(CHUNK_SIZE, carryLength * 2)];
+        System.arraycopy(carry, 0, chunk, 0, carryLength);
+        int filled = carryLength;
+        carryLength = 0;
+
+        while (true) {
+            while (filled < chunk.length && !eof) {
+                int read = in.read(chunk, filled, chunk.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+            }
+            if (eof) {
+                return filled == 0 ? null : ByteBuffer.wrap(chunk, 0, filled);
+            }
+
+            int lastNewline = filled - 1;
+            while (lastNewline >= 0 && chunk[lastNewline] != '\n') {
+                lastNewline--;
+            }
+            if (lastNewline >= 0) {
+                // Keep the partial last line for the next chunk
+                carryLength = filled - lastNewline - 1;
+                if (carry.length < carryLength) {
+                    carry = new byte[carryLength];
+                }
+                System.arraycopy(chunk, lastNewline + 1, carry, 0, carryLength);
+                return ByteBuffer.wrap(chunk, 0, lastNewline + 1);
+            }
+
+            // A single line longer than the chunk
+            chunk = Arrays.copyOf(chunk, chunk.length * 2);
+        }
+    }
+}
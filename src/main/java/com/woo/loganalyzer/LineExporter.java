@@ -0,0 +1,434 @@
+package com.woo.loganalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams matching lines to a file as records of line number, byte
+ * offset, timestamp, level and message, in one of three formats:
+ * <ul>
+ *   <li>CSV with a header row; the message is always quoted</li>
+ *   <li>JSON Lines, one object per line; missing fields are null</li>
+ *   <li>binary: "LAEX" and a version int, then records starting with a
+ *       type byte. 'F' starts a file (unsigned short length and UTF-8 name);
+ *       'L' is a line: line number and offset (longs), epoch second (long,
+ *       Long.MIN_VALUE if undated), flags (1 = date, 2 = time), level ordinal
+ *       (-1 if none), message length (int) and UTF-8 message. Numbers are big-endian.</li>
+ * </ul>
+ * Records are encoded straight from the line bytes into a large buffer,
+ * without building strings per row. Lines without a level export the
+ * whole line as their message. Output names ending in ".gz" are
+ * gzip-compressed.
+ *
+ * Partial instances encode their records into memory; they are written
+ * when merged into the root, with the line numbers shifted.
+ */
+public class LineExporter implements LineAggregator<LineExporter>, Closeable {
+
+    public enum Format {
+        CSV, JSONL, BINARY;
+
+        /**
+         * Format for a file name: .jsonl/.json, .bin, anything else CSV (ignoring a .gz suffix)
+         */
+        public static Format forFile(String fileName) {
+            String name = stripGzip(fileName.toLowerCase());
+            if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return JSONL;
+            }
+            return name.endsWith(".bin") ? BINARY : CSV;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BINARY_MAGIC = 0x4C41_4558; // "LAEX"
+    private static final int BINARY_VERSION = 1;
+    private static final byte[] JSON_LINE = "\"line\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final Format format;
+    private final boolean withFileNames;
+    private final OutputStream out; // null in partials
+    private long exported;
+
+    // Encoded file field of the current file (text formats)
+    private byte[] filePrefix = new byte[0];
+
+    // Record being encoded, everything after the line number
+    private final Bytes record = new Bytes(256);
+    private final Bytes number = new Bytes(64);
+
+    // Partials: encoded records, their end positions and line numbers
+    private final Bytes pending;
+    private int[] recordEnds;
+    private long[] lineNumbers;
+    private int pendingCount;
+
+    // Message bytes of the line being encoded, set by locateMessage
+    private ByteBuffer messageSource;
+    private int messageFrom;
+    private int messageTo;
+
+    // Logs are mostly in time order, so keep the last formatted date
+    private long keyDay = Long.MIN_VALUE;
+    private byte[] dayText;
+
+    private LineExporter(Format format, boolean withFileNames, OutputStream out) {
+        this.format = format;
+        this.withFileNames = withFileNames;
+        this.out = out;
+        this.pending = out == null ? new Bytes(BUFFER_SIZE / 4) : null;
+        this.recordEnds = out == null ? new int[64] : null;
+        this.lineNumbers = out == null ? new long[64] : null;
+    }
+
+    /**
+     * @param withFileNames add the file name to every record (text formats)
+     */
+    public static LineExporter open(File file, Format format, boolean withFileNames) throws IOException {
+        OutputStream stream = new FileOutputStream(file);
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        LineExporter exporter = new LineExporter(format, withFileNames, new BufferedOutputStream(stream, BUFFER_SIZE));
+        exporter.writeHeader();
+        return exporter;
+    }
+
+    public LineExporter newPartial() {
+        return new LineExporter(format, withFileNames, null);
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == Format.CSV) {
+            out.write(((withFileNames ? "file," : "") + "line,offset,timestamp,level,message\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+        } else if (format == Format.BINARY) {
+            record.clear();
+            record.writeInt(BINARY_MAGIC);
+            record.writeInt(BINARY_VERSION);
+            out.write(record.bytes, 0, record.length);
+        }
+    }
+
+    /**
+     * Lines accepted from now on come from this file
+     */
+    public void startFile(String name) throws IOException {
+        Bytes field = new Bytes(64);
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        if (format == Format.BINARY) {
+            field.write('F');
+            field.write((utf8.length >>> 8) & 0xFF);
+            field.write(utf8.length & 0xFF);
+            field.write(utf8, 0, utf8.length);
+            out.write(field.bytes, 0, field.length);
+            return;
+        }
+        if (!withFileNames) {
+            return;
+        }
+        if (format == Format.CSV) {
+            field.writeCsvQuoted(ByteBuffer.wrap(utf8), 0, utf8.length);
+            field.write(',');
+        } else {
+            field.writeAscii("\"file\":");
+            field.writeJsonString(ByteBuffer.wrap(utf8), 0, utf8.length);
+            field.write(',');
+        }
+        filePrefix = Arrays.copyOf(field.bytes, field.length);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        record.clear();
+        switch (format) {
+            case CSV -> encodeCsv(line);
+            case JSONL -> encodeJson(line);
+            case BINARY -> encodeBinary(line);
+        }
+
+        if (out != null) {
+            emit(lineNumber, record.bytes, 0, record.length);
+            return;
+        }
+        if (pendingCount == lineNumbers.length) {
+            lineNumbers = Arrays.copyOf(lineNumbers, pendingCount * 2);
+            recordEnds = Arrays.copyOf(recordEnds, pendingCount * 2);
+        }
+        pending.write(record.bytes, 0, record.length);
+        lineNumbers[pendingCount] = lineNumber;
+        recordEnds[pendingCount] = pending.length;
+        pendingCount++;
+    }
+
+    @Override
+    public void merge(LineExporter next, long lineOffset) {
+        int start = 0;
+        for (int i = 0; i < next.pendingCount; i++) {
+            emit(next.lineNumbers[i] + lineOffset, next.pending.bytes, start, next.recordEnds[i] - start);
+            start = next.recordEnds[i];
+        }
+    }
+
+    private void emit(long lineNumber, byte[] bytes, int offset, int length) {
+        // Everything before the record: type or opening brace, file field, line number
+        number.clear();
+        if (format == Format.BINARY) {
+            number.write('L');
+            number.writeLongBytes(lineNumber);
+        } else {
+            if (format == Format.JSONL) {
+                number.write('{');
+            }
+            number.write(filePrefix, 0, filePrefix.length);
+            if (format == Format.JSONL) {
+                number.write(JSON_LINE, 0, JSON_LINE.length);
+            }
+            number.writeLong(lineNumber);
+        }
+        try {
+            out.write(number.bytes, 0, number.length);
+            out.write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        exported++;
+    }
+
+    private void encodeCsv(ParsedLine line) {
+        record.write(',');
+        record.writeLong(line.fileOffset());
+        record.write(',');
+        writeTimestamp(line);
+        record.write(',');
+        if (line.level() != null) {
+            record.writeAscii(line.level().name());
+        }
+        record.write(',');
+        locateMessage(line);
+        record.writeCsvQuoted(messageSource, messageFrom, messageTo);
+        record.write('\n');
+    }
+
+    private void encodeJson(ParsedLine line) {
+        record.writeAscii(",\"offset\":");
+        record.writeLong(line.fileOffset());
+        record.writeAscii(",\"timestamp\":");
+        if (line.hasDate()) {
+            record.write('"');
+            writeTimestamp(line);
+            record.write('"');
+        } else {
+            record.writeAscii("null");
+        }
+        record.writeAscii(",\"level\":");
+        if (line.level() != null) {
+            record.write('"');
+            record.writeAscii(line.level().name());
+            record.write('"');
+        } else {
+            record.writeAscii("null");
+        }
+        record.writeAscii(",\"message\":");
+        locateMessage(line);
+        record.writeJsonString(messageSource, messageFrom, messageTo);
+        record.writeAscii("}\n");
+    }
+
+    private void encodeBinary(ParsedLine line) {
+        record.writeLongBytes(line.fileOffset());
+        record.writeLongBytes(line.hasDate() ? line.epochSecond() : Long.MIN_VALUE);
+        record.write((line.hasDate() ? 1 : 0) | (line.hasTime() ? 2 : 0));
+        record.write(line.level() != null ? line.level().ordinal() : -1);
+        locateMessage(line);
+        record.writeInt(messageTo - messageFrom);
+        record.write(messageSource, messageFrom, messageTo);
+    }
+
+    /**
+     * Point messageSource at the message bytes: a range of the line, the whole line if it has no
+     * message, or the decoded text of a JSON message with escapes
+     */
+    private void locateMessage(ParsedLine line) {
+        if (line.messageStart() < 0) {
+            messageSource = line.buffer();
+            messageFrom = line.start();
+            messageTo = line.end();
+        } else if (line.isMessageInBuffer()) {
+            messageSource = line.buffer();
+            messageFrom = line.messageStart();
+            messageTo = line.messageEnd();
+        } else {
+            byte[] decoded = line.message().getBytes(StandardCharsets.UTF_8);
+            messageSource = ByteBuffer.wrap(decoded);
+            messageFrom = 0;
+            messageTo = decoded.length;
+        }
+    }
+
+    /**
+     * "yyyy-MM-dd HH:mm:ss", or just the date for lines without a time
+     */
+    private void writeTimestamp(ParsedLine line) {
+        if (!line.hasDate()) {
+            return;
+        }
+        long day = line.epochDay();
+        if (day != keyDay) {
+            keyDay = day;
+            dayText = LocalDate.ofEpochDay(day).toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        record.write(dayText, 0, dayText.length);
+        if (line.hasTime()) {
+            long second = line.epochSecond() - day * ParsedLine.SECONDS_PER_DAY;
+            record.write(' ');
+            record.writeTwoDigits((int) (second / 3600));
+            record.write(':');
+            record.writeTwoDigits((int) (second / 60 % 60));
+            record.write(':');
+            record.writeTwoDigits((int) (second % 60));
+        }
+    }
+
+    public long getExported() {
+        return exported;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static String stripGzip(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * Growable byte array with the encoders the formats need
+     */
+    private static final class Bytes {
+
+        private byte[] bytes;
+        private int length;
+
+        Bytes(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void write(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void write(ByteBuffer source, int from, int to) {
+            ensure(to - from);
+            source.get(from, bytes, length, to - from);
+            length += to - from;
+        }
+
+        void writeAscii(String text) {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                bytes[length++] = (byte) text.charAt(i);
+            }
+        }
+
+        void writeLong(long value) {
+            if (value < 0) {
+                writeAscii(Long.toString(value));
+                return;
+            }
+            ensure(20);
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        void writeTwoDigits(int value) {
+            ensure(2);
+            bytes[length++] = (byte) ('0' + value / 10);
+            bytes[length++] = (byte) ('0' + value % 10);
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLongBytes(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        // "..." with embedded quotes doubled
+        void writeCsvQuoted(ByteBuffer source, int from, int to) {
+            ensure((to - from) + 2);
+            write('"');
+            for (int i = from; i < to; i++) {
+                byte b = source.get(i);
+                if (b == '"') {
+                    write('"');
+                }
+                write(b);
+            }
+            write('"');
+        }
+
+        // "..." with quotes, backslashes and control characters escaped; other bytes pass through as UTF-8
+        void writeJsonString(ByteBuffer source, int from, int to) {
+            ensure((to - from) + 2);
+            write('"');
+            for (int i = from; i < to; i++) {
+                byte b = source.get(i);
+                if (b == '"' || b == '\\') {
+                    write('\\');
+                    write(b);
+                } else if (b >= 0 && b < 0x20) {
+                    writeAscii("\\u00");
+                    write(HEX[b >> 4]);
+                    write(HEX[b & 0xF]);
+                } else {
+                    write(b);
+                }
+            }
+            write('"');
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.woo.loganalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Resolves a line number, as printed by "[Line N]", to the byte offset the
+ * line starts at in an uncompressed log, so it can be read again with a
+ * seek. Newlines are counted forward from the closest checkpoint before
+ * the line: with a {@link LogIndex} that is the start of the line's block,
+ * so at most about one block is read whatever the size of the file;
+ * without one the file is streamed from the start.
+ */
+public final class LineLocator {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Where a line starts, and the checkpoint counting started from
+     *
+     * @param checkpointLine number of lines before the checkpoint
+     */
+    public record Location(long lineNumber, long offset, long checkpointLine, long checkpointOffset) {
+    }
+
+    private LineLocator() {
+    }
+
+    /**
+     * @param index index of the file, or null to count from the start
+     * @return the location, or null if the file has fewer lines
+     */
+    public static Location locate(File logFile, LogIndex index, long lineNumber) throws IOException {
+        LogIndex.Block block = index != null ? index.blockForLine(lineNumber) : null;
+        long checkpointLine = block != null ? block.firstLine() : 0;
+        long checkpointOffset = block != null ? block.start() : 0;
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long line = checkpointLine + 1;
+            long lineStart = checkpointOffset;
+            long position = checkpointOffset;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (line < lineNumber) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    return null;
+                }
+                for (int i = 0; i < read && line < lineNumber; i++) {
+                    if (buffer.get(i) == '\n') {
+                        line++;
+                        lineStart = position + i + 1;
+                    }
+                }
+                position += read;
+            }
+            return lineStart < size ? new Location(lineNumber, lineStart, checkpointLine, checkpointOffset) : null;
+        }
+    }
+
+    /**
+     * The line starting at offset, without its line terminator
+     */
+    public static String readLine(File logFile, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = offset;
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                int end = 0;
+                while (end < read && buffer.get(end) != '\n') {
+                    end++;
+                }
+                line.write(buffer.array(), 0, end);
+                if (end < read) {
+                    break;
+                }
+                position += read;
+            }
+
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.woo.loganalyzer;
+
+/**
+ * Takes the lines that pass the filter, in file order. A sink is fed
+ * by one sequential scan; results that can be computed in parallel
+ * chunks and merged are {@link LineAggregator}s.
+ */
+public interface LineSink {
+
+    /**
+     * Accept a matching line. The parsed line is reused by the caller,
+     * so anything kept past this call must be copied out.
+     *
+     * @param lineNumber 1-based line number, relative to the chunk this instance scans (the file, when sequential)
+     */
+    void accept(ParsedLine line, long lineNumber);
+
+    /**
+     * Take a whole index block from its stored counts instead of reading it.
+     * Only called for blocks that may match the filter.
+     *
+     * @return true if the block was consumed and does not need to be scanned
+     */
+    default boolean acceptBlock(LogIndex.Block block, LogFilter filter) {
+        return false;
+    }
+
+    /**
+     * Whether accept() reads the line text. Sinks that only use the
+     * parsed fields (and at most the message) can be fed from a {@link LogCache}.
+     */
+    default boolean needsText() {
+        return true;
+    }
+
+    /**
+     * Whether accept() reads the message
+     */
+    default boolean needsMessage() {
+        return true;
+    }
+}
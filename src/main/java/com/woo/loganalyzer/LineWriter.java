@@ -0,0 +1,270 @@
+package com.woo.loganalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Buffered output for large numbers of lines. Text is encoded into a
+ * large block and written with one call per block instead of one per
+ * line. In async mode full blocks are handed to a writer thread through
+ * a small bounded queue, so scanning goes on while earlier output is
+ * written.
+ *
+ * Once the output is gone (a closed pipe, e.g. "| head"), the next block
+ * write throws {@link ClosedException}, which callers let propagate to
+ * stop the scan.
+ */
+public class LineWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int QUEUE_SIZE = 4;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int position;
+
+    // Async mode only
+    private final BlockingQueue<Object> queue;
+    private final BlockingQueue<byte[]> freeBlocks;
+    private final Thread thread;
+    private volatile boolean failed;
+
+    /**
+     * Thrown when the output has been closed by the reader
+     */
+    public static class ClosedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ClosedException(Throwable cause) {
+            super("Output closed", cause);
+        }
+    }
+
+    public LineWriter(OutputStream out, Charset charset, boolean async) {
+        this.out = out;
+        this.charset = charset;
+        if (async) {
+            queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            freeBlocks = new ArrayBlockingQueue<>(QUEUE_SIZE + 1);
+            thread = new Thread(this::writeAll, "output-writer");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            queue = null;
+            freeBlocks = null;
+            thread = null;
+        }
+    }
+
+    /**
+     * The current System.out, so that redirecting it with System.setOut still applies (flush other
+     * writers to it before writing)
+     */
+    public static LineWriter stdout(boolean async) {
+        return new LineWriter(new SystemOut(System.out), System.out.charset(), async);
+    }
+
+    public LineWriter write(String text) {
+        int length = text.length();
+        if (length > BLOCK_SIZE / 4) {
+            return write(text.getBytes(charset));
+        }
+        if (position + length > block.length) {
+            writeBlock();
+        }
+        // ASCII goes straight into the block; anything else through the charset
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                return write(text.substring(i).getBytes(charset));
+            }
+            block[position++] = (byte) c;
+        }
+        return this;
+    }
+
+    public LineWriter write(long number) {
+        if (number < 0) {
+            return write(Long.toString(number));
+        }
+        if (position + 20 > block.length) {
+            writeBlock();
+        }
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            block[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        position += digits;
+        return this;
+    }
+
+    public LineWriter newLine() {
+        if (position == block.length) {
+            writeBlock();
+        }
+        block[position++] = '\n';
+        return this;
+    }
+
+    private LineWriter write(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (position == block.length) {
+                writeBlock();
+            }
+            int count = Math.min(bytes.length - offset, block.length - position);
+            System.arraycopy(bytes, offset, block, position, count);
+            position += count;
+            offset += count;
+        }
+        return this;
+    }
+
+    /**
+     * Write out everything buffered so far
+     */
+    public void flush() {
+        writeBlock();
+        if (thread == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new ClosedException(e);
+            }
+            return;
+        }
+
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(written);
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failed) {
+            throw new ClosedException(null);
+        }
+    }
+
+    private void writeBlock() {
+        if (position == 0) {
+            return;
+        }
+        if (thread == null) {
+            try {
+                out.write(block, 0, position);
+            } catch (IOException e) {
+                throw new ClosedException(e);
+            }
+            position = 0;
+            return;
+        }
+
+        enqueue(new Block(block, position));
+        byte[] free = freeBlocks.poll();
+        block = free != null ? free : new byte[BLOCK_SIZE];
+        position = 0;
+    }
+
+    private void enqueue(Object item) {
+        if (failed) {
+            throw new ClosedException(null);
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClosedException(e);
+        }
+    }
+
+    private void writeAll() {
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item instanceof Block written) {
+                    if (!failed) {
+                        try {
+                            out.write(written.bytes(), 0, written.length());
+                        } catch (IOException e) {
+                            failed = true; // Keep draining so the producer never blocks
+                        }
+                    }
+                    freeBlocks.offer(written.bytes());
+                } else if (item instanceof CountDownLatch flushed) {
+                    if (!failed) {
+                        try {
+                            out.flush();
+                        } catch (IOException e) {
+                            failed = true;
+                        }
+                    }
+                    flushed.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whole blocks written to a PrintStream, with the errors it swallows turned back into IOExceptions
+     */
+    private static final class SystemOut extends OutputStream {
+
+        private final PrintStream stream;
+
+        SystemOut(PrintStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            stream.write(b);
+            check();
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            stream.write(bytes, offset, length);
+            check();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            stream.flush();
+            check();
+        }
+
+        private void check() throws IOException {
+            if (stream.checkError()) {
+                throw new IOException("Output closed");
+            }
+        }
+    }
+
+    private record Block(byte[] bytes, int length) {
+    }
+}
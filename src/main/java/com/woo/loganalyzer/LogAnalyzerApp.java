@@ -2,24 +2,28 @@ package com.woo.loganalyzer;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
 
 import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 import java.util.Map;
-import java.util.HashMap;
 import java.util.stream.Collectors;
 
 @Command(
@@ -30,11 +34,19 @@ import java.util.stream.Collectors;
 )
 public class LogAnalyzerApp implements Callable<Integer> {
 
+    // Optional here so the merge subcommand can run without log files; checked in call()
     @Parameters(
-            index = "0",
-            description = "Path to the log file to analyze"
+            arity = "0..*",
+            paramLabel = "<path>",
+            description = "Log files, directories or glob patterns (e.g. 'logs/app.log*') to analyze"
     )
-    private File logFile;
+    private List<String> logPaths;
+
+    @Spec
+    private CommandSpec spec;
+
+    // Resolved from logPaths
+    private List<File> logFiles;
 
     @Option(
             names = {"-c", "--count"},
@@ -50,27 +62,34 @@ public class LogAnalyzerApp implements Callable<Integer> {
 
     @Option(
             names = {"-s", "--search"},
-            description = "Search for lines containing specified text"
+            description = "Search for lines containing specified text (repeatable; any term matches)"
     )
-    private String searchTerm;
+    private List<String> searchTerms;
 
     @Option(
             names = {"--from"},
-            description = "Filter logs from this date (format: YYYY-MM-DD)"
+            description = "Filter logs from this date (format: YYYY-MM-DD or 'YYYY-MM-DD HH:mm[:ss]')"
     )
     private String fromDate;
 
     @Option(
             names = {"--to"},
-            description = "Filter logs until this date (format: YYYY-MM-DD)"
+            description = "Filter logs until this date, inclusive (format: YYYY-MM-DD or 'YYYY-MM-DD HH:mm[:ss]')"
     )
     private String toDate;
 
     @Option(
             names = {"-r", "--regex"},
-            description = "Search using regex pattern"
+            description = "Search using regex pattern (repeatable; any pattern matches)"
     )
-    private String regexPattern;
+    private List<String> regexPatterns;
+
+    @Option(
+            names = {"--patterns-file"},
+            paramLabel = "<file>",
+            description = "Search for any of the patterns in a file, one per line ('regex:' prefix for regexes)"
+    )
+    private File patternsFile;
 
     @Option(
             names = {"--stats"},
@@ -84,235 +103,1036 @@ public class LogAnalyzerApp implements Callable<Integer> {
     )
     private String timeStats;
 
+    @Option(
+            names = {"--bucket"},
+            paramLabel = "<width>",
+            description = "Show lines, error rate and latency percentiles per time bucket of this width "
+                    + "(e.g. 30s, 5m, 1h, 1d)"
+    )
+    private String bucketWidth;
+
+    @Option(
+            names = {"--latency-field"},
+            paramLabel = "<name>",
+            defaultValue = "took",
+            description = "Message field holding the latency for --bucket, as in took=123ms or took: 1.5s "
+                    + "(default: took)"
+    )
+    private String latencyField;
+
+    @Option(
+            names = {"--bursts"},
+            description = "Detect bursts in the per-minute counts of each level and message template and report "
+                    + "their time windows and top messages, after any other report (in --follow mode as they happen)"
+    )
+    private boolean detectBursts;
+
     @Option(
             names = {"--top"},
             description = "Show top N most frequent log messages"
     )
     private Integer topN;
 
+    @Option(
+            names = {"--approx"},
+            arity = "0..1",
+            paramLabel = "<counters>",
+            fallbackValue = "1000",
+            description = "Count messages for --top/--summary approximately in a fixed number of counters "
+                    + "(default: 1000), reporting error bounds"
+    )
+    private Integer approxCounters;
+
+    @Option(
+            names = {"--templates"},
+            description = "Group messages for --top/--summary by mined template, masking numbers, IPs and ids"
+    )
+    private boolean messageTemplates;
+
     @Option(
             names = {"--summary"},
             description = "Show comprehensive summary report"
     )
     private boolean showSummary;
 
-    @Option(names = {"--export"}, description = "Export results to CSV file")
+    @Option(names = {"--export"}, paramLabel = "<exportFile>", description = "Export results to CSV file")
     private String exportFile;
 
+    @Option(
+            names = {"--export-lines"},
+            paramLabel = "<file>",
+            description = "Write matching lines as records to a file (CSV, .jsonl or .bin; .gz to compress)"
+    )
+    private File exportLinesFile;
+
+    @Option(
+            names = {"--export-format"},
+            description = "Format for --export-lines: ${COMPLETION-CANDIDATES} (default: from the file name)"
+    )
+    private LineExporter.Format exportFormat;
+
+    @Option(
+            names = {"--emit-partial"},
+            paramLabel = "<file>",
+            description = "Save the raw level, time and message counts to a file for the merge subcommand"
+    )
+    private File partialFile;
+
+    @Option(
+            names = {"--format"},
+            description = "Log line format: default, iso8601, logback, json or a pattern such as "
+                    + "'{timestamp} [{thread}] {level} - {message}' (default: default)"
+    )
+    private String logFormat;
+
+    @Option(
+            names = {"--timezone"},
+            paramLabel = "<zone>",
+            description = "Convert timestamps that carry an offset to this zone (e.g. UTC, +02:00, Europe/Berlin)"
+    )
+    private String timezone;
+
+    @Option(
+            names = {"--threads"},
+            description = "Number of threads used to scan the file (0 = all cores, default: 1)",
+            defaultValue = "1"
+    )
+    private int threads;
+
+    @Option(
+            names = {"--build-index"},
+            description = "Build a sidecar index (<logfile>.idx) used to speed up later date and level queries"
+    )
+    private boolean buildIndex;
+
+    @Option(
+            names = {"--token-index"},
+            description = "Build the index with a Bloom filter of each block's tokens, so --search and --regex "
+                    + "only read blocks that may contain the term"
+    )
+    private boolean tokenIndex;
+
+    @Option(
+            names = {"--cache"},
+            description = "Cache parsed columns in <logfile>.cache so later reports skip reading and parsing the log"
+    )
+    private boolean buildCache;
+
+    @Option(
+            names = {"--line"},
+            paramLabel = "<number>",
+            description = "Print line N (as in [Line N]) with its byte offset, counting from the nearest index checkpoint"
+    )
+    private Long lineNumber;
+
+    @Option(
+            names = {"--count-only"},
+            description = "Only count matching lines instead of printing them"
+    )
+    private boolean countOnly;
+
+    @Option(
+            names = {"--async-output"},
+            description = "Write matching lines from a separate thread while scanning continues"
+    )
+    private boolean asyncOutput;
+
+    @Option(
+            names = {"--metrics"},
+            description = "After the run, report throughput, time per stage (read, parse, filter, aggregate, output), "
+                    + "lines rejected by each filter, peak heap and GC time"
+    )
+    private boolean showMetrics;
+
+    @Option(
+            names = {"--metrics-json"},
+            paramLabel = "<file>",
+            description = "Append the --metrics figures to a file as one JSON object per run"
+    )
+    private File metricsFile;
+
+    @Option(
+            names = {"-f", "--follow"},
+            description = "Keep reading lines as they are appended and refresh the report periodically"
+    )
+    private boolean follow;
+
+    @Option(
+            names = {"--interval"},
+            description = "Seconds between report refreshes in --follow mode (default: 5)",
+            defaultValue = "5"
+    )
+    private int refreshSeconds;
+
+    @Option(
+            names = {"--window"},
+            description = "Sliding window in seconds for the live error-rate signal in --follow mode (default: 300)",
+            defaultValue = "300"
+    )
+    private int windowSeconds;
+
+    private static final DateTimeFormatter LIVE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter MINUTE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // The console, or the response of a request to the query server
+    private final PrintStream out;
+    private final PrintStream err;
+    private final OutputStream lineOut;
+    private final ServerCache served;
+
+    // Built once per run from the filter and format options
+    private LogFilter filter;
+    private LogFormat format;
+    private MultiLogScanner scanner;
+    private RunMetrics metrics;
+
+    public LogAnalyzerApp() {
+        this.out = System.out;
+        this.err = System.err;
+        this.lineOut = null;
+        this.served = null;
+    }
+
+    /**
+     * An instance answering one server request, writing everything to the response
+     * and taking indexes and caches from the server's
+     */
+    LogAnalyzerApp(ServerCache served, OutputStream response) {
+        this.out = new PrintStream(response, true, StandardCharsets.UTF_8);
+        this.err = out;
+        this.lineOut = response;
+        this.served = served;
+    }
+
     @Override
     public Integer call() throws Exception {
-        // Validate file exists
-        if (!logFile.exists()) {
-            System.err.println("Error: File not found - " + logFile.getPath());
+        if (logPaths == null) {
+            throw new ParameterException(spec.commandLine(), "Missing required parameter: '<path>'");
+        }
+
+        // Validate files exist
+        try {
+            logFiles = LogPaths.resolve(logPaths);
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
             return 1;
         }
 
-        if (!logFile.isFile()) {
-            System.err.println("Error: Path is not a file - " + logFile.getPath());
+        try {
+            PatternSet filePatterns = null;
+            if (patternsFile != null) {
+                if (!patternsFile.isFile()) {
+                    err.println("Error: Patterns file not found - " + patternsFile.getPath());
+                    return 1;
+                }
+                filePatterns = PatternSet.load(patternsFile);
+            }
+            filter = LogFilter.of(logLevel, searchTerms, fromDate, toDate, regexPatterns, filePatterns);
+            format = LogFormat.of(logFormat, timezone);
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
             return 1;
         }
 
-        System.out.println("Analyzing: " + logFile.getName());
-        System.out.println("File size: " + formatFileSize(logFile.length()));
+        if (threads < 0) {
+            err.println("Error: --threads must not be negative");
+            return 1;
+        }
+        scanner = new MultiLogScanner(logFiles, threads, format);
+        if (showMetrics || metricsFile != null) {
+            metrics = new RunMetrics(filter);
+            scanner.useMetrics(metrics);
+        }
+
+        for (LogScanner fileScanner : scanner.getScanners()) {
+            Compression compression = fileScanner.getCompression();
+            if (!compression.isSupported()) {
+                err.println("Error: " + compression.getDisplayName() + "-compressed input is not supported - "
+                        + fileScanner.getLogFile().getPath() + " (decompress it first)");
+                return 1;
+            }
+            if (follow && compression != Compression.NONE) {
+                err.println("Error: --follow does not support compressed files");
+                return 1;
+            }
+        }
+
+        if (!validateReportOptions()) {
+            return 1;
+        }
+
+        if (logFiles.size() == 1) {
+            out.println("Analyzing: " + logFiles.get(0).getName());
+            out.println("File size: " + formatFileSize(logFiles.get(0).length()));
+        } else {
+            long totalSize = 0;
+            out.println("Analyzing: " + logFiles.size() + " files");
+            for (File file : logFiles) {
+                out.println("  " + file.getPath() + " (" + formatFileSize(file.length()) + ")");
+                totalSize += file.length();
+            }
+            out.println("File size: " + formatFileSize(totalSize));
+        }
+
+        // Use the sidecar index when present and still matching the file
+        for (LogScanner fileScanner : scanner.getScanners()) {
+            File file = fileScanner.getLogFile();
+            if (fileScanner.getCompression() != Compression.NONE) {
+                if (buildIndex || tokenIndex) {
+                    out.println("Index skipped for compressed file: " + file.getPath());
+                }
+                continue; // Index offsets refer to the plain file
+            }
+            LogIndex index;
+            if (buildIndex || tokenIndex) {
+                index = LogIndex.build(file, fileScanner, tokenIndex);
+                out.println("Index written to: " + LogIndex.indexFileFor(file).getPath()
+                        + " (" + index.getBlocks().size() + " blocks"
+                        + (index.hasTokens() ? " with token filters" : "")
+                        + (index.getReusedBlocks() > 0
+                                ? ", " + index.getReusedBlocks() + " kept from the previous index" : "")
+                        + ")");
+            } else if (served != null) {
+                index = served.index(fileScanner);
+            } else {
+                index = LogIndex.load(file, format);
+            }
+            if (index != null) {
+                fileScanner.useIndex(index);
+            }
+        }
+
+        if (lineNumber != null) {
+            return printLine() ? 0 : 1;
+        }
+
+        // Use the column cache the same way, (re)building it on request
+        for (LogScanner fileScanner : scanner.getScanners()) {
+            File file = fileScanner.getLogFile();
+            LogCache cache = served != null ? served.cache(fileScanner) : LogCache.load(file, format);
+            if (cache == null && buildCache) {
+                cache = LogCache.build(file, format);
+                out.println("Cache written to: " + LogCache.cacheFileFor(file).getPath()
+                        + " (" + cache.getLineCount() + " lines)");
+            }
+            if (cache != null) {
+                fileScanner.useCache(cache);
+            }
+        }
 
         if (showCount) {
             long lineCount = countLines();
-            System.out.println("Total lines: " + lineCount);
+            out.println("Total lines: " + lineCount);
         }
 
         // Check if any filtering/searching is requested
-        boolean hasFilters = (logLevel != null || fromDate != null || toDate != null || searchTerm != null
-                                || regexPattern != null || showStats || timeStats != null || topN != null
-                                || showSummary);
+        boolean hasFilters = (logLevel != null || fromDate != null || toDate != null
+                                || filter.hasTextFilter() || showStats || timeStats != null || topN != null
+                                || bucketWidth != null || detectBursts || showSummary || countOnly || exportLinesFile != null || partialFile != null);
 
         if (hasFilters || showStats) {
             // Display what filters are active
             if (logLevel != null) {
-                System.out.println("Filter: level = " + logLevel.toUpperCase());
+                out.println("Filter: level = " + logLevel.toUpperCase());
             }
             if (fromDate != null) {
-                System.out.println("Filter: from = " + fromDate);
+                out.println("Filter: from = " + fromDate);
             }
             if (toDate != null) {
-                System.out.println("Filter: to = " + toDate);
+                out.println("Filter: to = " + toDate);
+            }
+            if (searchTerms != null) {
+                out.println("Filter: search = " + quoteAll(searchTerms));
             }
-            if (searchTerm != null) {
-                System.out.println("Filter: search = '" + searchTerm + "'");
+            if (regexPatterns != null) {
+                out.println("Filter: regex = " + quoteAll(regexPatterns));
             }
-            if (regexPattern != null) {
-                System.out.println("Filter: regex = '" + regexPattern + "'");
+            if (patternsFile != null) {
+                List<PatternSet> groups = filter.getPatternGroups();
+                out.println("Filter: patterns = " + groups.get(groups.size() - 1).size()
+                        + " from " + patternsFile.getPath());
             }
-            System.out.println("---");
+            out.println("---");
 
-            if (showStats) {
-                displayStatistics();
-            } else if (timeStats != null) {
-                displayTimeStatistics();
-            } else if (topN != null) {
-                displayTopMessages();
-            } else if (showSummary) {
-                displaySummary();
-            } else {
-                displayAllFilters();
+            if (!follow) {
+                LogStatistics stats = newStatistics();
+                if (metrics != null) {
+                    metrics.setLinesAreOutput(stats == null && bucketWidth == null && !detectBursts
+                            && partialFile == null && !countOnly);
+                }
+                if (partialFile != null) {
+                    if (!emitPartial()) {
+                        return 1;
+                    }
+                } else if (stats != null) {
+                    BurstDetector bursts = scanReport(stats, stats::newPartial);
+                    printSkippedFiles();
+                    long reportStart = System.nanoTime();
+                    displayReport(stats);
+                    displayBursts(bursts);
+                    if (metrics != null) {
+                        metrics.addOutput(System.nanoTime() - reportStart);
+                    }
+                } else if (bucketWidth != null) {
+                    BucketAnalytics analytics = new BucketAnalytics(BucketAnalytics.parseWidth(bucketWidth),
+                            latencyField);
+                    BurstDetector bursts = scanReport(analytics, analytics::newPartial);
+                    printSkippedFiles();
+                    long reportStart = System.nanoTime();
+                    displayBucketAnalytics(analytics);
+                    displayBursts(bursts);
+                    if (metrics != null) {
+                        metrics.addOutput(System.nanoTime() - reportStart);
+                    }
+                } else if (detectBursts) {
+                    BurstDetector bursts = new BurstDetector();
+                    scanInTimeOrder(bursts);
+                    bursts.finish();
+                    printSkippedFiles();
+                    long reportStart = System.nanoTime();
+                    displayBursts(bursts);
+                    if (metrics != null) {
+                        metrics.addOutput(System.nanoTime() - reportStart);
+                    }
+                } else if (countOnly) {
+                    displayMatchCount();
+                } else if (exportLinesFile != null) {
+                    exportLines();
+                } else {
+                    try {
+                        displayAllFilters();
+                    } catch (LineWriter.ClosedException e) {
+                        return 0; // Reader went away, e.g. piped into head
+                    }
+                }
             }
         }
 
+        if (follow) {
+            try {
+                followLog();
+            } catch (LineWriter.ClosedException e) {
+                return 0;
+            }
+        }
+
+        if (metrics != null) {
+            displayMetrics();
+        }
         return 0;
     }
 
-    private long countLines() throws Exception {
-        long count = 0;
+    private boolean validateReportOptions() {
+        if (timeStats != null && !timeStats.equals("hourly") && !timeStats.equals("daily")) {
+            err.println("Error: --time-stats must be 'hourly' or 'daily'");
+            return false;
+        }
+        if (bucketWidth != null && BucketAnalytics.parseWidth(bucketWidth) < 0) {
+            err.println("Error: --bucket must be a number followed by s, m, h or d (e.g. 5m)");
+            return false;
+        }
+        if (bucketWidth != null && (showStats || timeStats != null || topN != null || showSummary)) {
+            err.println("Error: --bucket cannot be combined with other reports");
+            return false;
+        }
+        if (bucketWidth != null && (partialFile != null || follow)) {
+            err.println("Error: --bucket cannot be combined with --emit-partial or --follow");
+            return false;
+        }
+        if (detectBursts && threads != 1) {
+            err.println("Error: --bursts reads lines in time order and cannot be combined with --threads");
+            return false;
+        }
+        if (detectBursts && (partialFile != null || countOnly || exportLinesFile != null)) {
+            err.println("Error: --bursts cannot be combined with --emit-partial, --count-only or --export-lines");
+            return false;
+        }
+        if (detectBursts && exportFile != null && newStatistics() == null && bucketWidth == null) {
+            err.println("Error: --export needs a report besides --bursts");
+            return false;
+        }
+        if (latencyField != null && latencyField.isEmpty()) {
+            err.println("Error: --latency-field must not be empty");
+            return false;
+        }
+        if (topN != null && topN <= 0) {
+            err.println("Error: --top must be a positive number");
+            return false;
+        }
+        if (approxCounters != null && approxCounters <= 0) {
+            err.println("Error: --approx must be a positive number of counters");
+            return false;
+        }
+        if (approxCounters != null && messageTemplates) {
+            err.println("Error: --approx cannot be combined with --templates");
+            return false;
+        }
+        if (follow && logFiles.size() > 1) {
+            err.println("Error: --follow supports a single file");
+            return false;
+        }
+        if (follow && exportFile != null) {
+            err.println("Error: --export is not supported with --follow");
+            return false;
+        }
+        if (exportLinesFile != null && (showStats || timeStats != null || topN != null || bucketWidth != null
+                || showSummary || follow || countOnly)) {
+            err.println("Error: --export-lines cannot be combined with reports, --count-only or --follow");
+            return false;
+        }
+        if (partialFile != null && (follow || countOnly || exportLinesFile != null)) {
+            err.println("Error: --emit-partial cannot be combined with --follow, --count-only or --export-lines");
+            return false;
+        }
+        if (countOnly && (showStats || timeStats != null || topN != null || bucketWidth != null || showSummary
+                || follow)) {
+            err.println("Error: --count-only cannot be combined with reports or --follow");
+            return false;
+        }
+        if (lineNumber != null && lineNumber <= 0) {
+            err.println("Error: --line must be a positive line number");
+            return false;
+        }
+        if (lineNumber != null && (logFiles.size() > 1 || follow)) {
+            err.println("Error: --line needs a single file and cannot be combined with --follow");
+            return false;
+        }
+        if (follow && served != null) {
+            err.println("Error: --follow is not available through the server");
+            return false;
+        }
+        if (served != null && (exportFile != null || exportLinesFile != null || partialFile != null
+                || metricsFile != null || buildIndex || tokenIndex || buildCache)) {
+            // A query must not write files for whoever managed to send it
+            err.println("Error: --export, --export-lines, --emit-partial, --metrics-json, --build-index, "
+                    + "--token-index and --cache are not available through the server");
+            return false;
+        }
+        if (follow && (showMetrics || metricsFile != null)) {
+            err.println("Error: --metrics and --metrics-json cannot be combined with --follow");
+            return false;
+        }
+        if (follow && (refreshSeconds <= 0 || windowSeconds <= 0)) {
+            err.println("Error: --interval and --window must be positive");
+            return false;
+        }
+        return true;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            while (reader.readLine() != null) {
-                count++;
-            }
+    /**
+     * Statistics tracking what the selected report needs, or null when just listing lines
+     */
+    private LogStatistics newStatistics() {
+        if (showStats) {
+            return new LogStatistics(true, null, false, false);
+        } else if (timeStats != null) {
+            return new LogStatistics(false, timeStats, false, false);
+        } else if (topN != null) {
+            return new LogStatistics(false, null, false, true, messageCounters(), messageTemplates);
+        } else if (showSummary) {
+            return new LogStatistics(true, null, true, true, messageCounters(), messageTemplates);
         }
+        return null;
+    }
 
-        return count;
+    /**
+     * Scan into the report's aggregator, and with --bursts into a burst detector in the same pass
+     *
+     * @return the finished detector, or null without --bursts
+     */
+    private <T extends LineAggregator<T>> BurstDetector scanReport(T report, Supplier<T> factory)
+            throws IOException {
+        if (!detectBursts) {
+            scanner.scan(filter, report, factory);
+            return null;
+        }
+        BurstDetector bursts = new BurstDetector();
+        scanInTimeOrder(new PairedSink(report, bursts));
+        bursts.finish();
+        return bursts;
     }
 
-    private String formatFileSize(long bytes) {
-        if (bytes < 1024) return bytes + " B";
-        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
-        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024));
-        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    private void scanInTimeOrder(LineSink sink) throws IOException {
+        if (logFiles.size() > 1) {
+            // The detector needs one time-ordered stream, not file after file
+            scanner.scanInTimeOrder(filter, sink);
+        } else {
+            scanner.scan(filter, sink);
+        }
     }
 
+    private int messageCounters() {
+        return approxCounters != null ? approxCounters : 0;
+    }
 
+    private void displayReport(LogStatistics stats) {
+        if (showStats) {
+            displayStatistics(stats);
+        } else if (timeStats != null) {
+            displayTimeStatistics(stats);
+        } else if (topN != null) {
+            displayTopMessages(stats);
+        } else if (showSummary) {
+            displaySummary(stats);
+        }
+    }
 
-    private boolean matchesDateFilter(String line) {
-        // If no date filters specified, include all lines
-        if (fromDate == null && toDate == null) {
-            return true;
+    /**
+     * Scan into statistics covering every report and save them as a partial,
+     * then show the selected report, if any
+     */
+    private boolean emitPartial() throws Exception {
+        LogStatistics stats = LogStatistics.forPartial(messageCounters(), messageTemplates);
+        scanner.scan(filter, stats, stats::newPartial);
+        printSkippedFiles();
+        long outputStart = System.nanoTime();
+        if (!savePartial(stats)) {
+            return false;
         }
+        displayReport(stats);
+        if (metrics != null) {
+            metrics.addOutput(System.nanoTime() - outputStart);
+        }
+        return true;
+    }
 
-        // Extract date from log line (first 10 characters: "2024-12-09")
-        if (line.length() < 10) {
-            return false; // Line too short to contain a date
+    private boolean savePartial(LogStatistics stats) {
+        try {
+            stats.save(partialFile);
+        } catch (IOException e) {
+            err.println("Error writing partial: " + e.getMessage());
+            return false;
+        }
+        out.println("Partial written to: " + partialFile.getPath() + " (" + stats.getTotalLogs() + " logs)");
+        return true;
+    }
+
+    @Command(
+            name = "merge",
+            mixinStandardHelpOptions = true,
+            description = "Merge partials written with --emit-partial (e.g. one per host) and show a report"
+    )
+    int merge(
+            @Option(names = {"--stats"}, description = "Show log level statistics (count and percentage)")
+            boolean showStats,
+            @Option(names = {"--time-stats"}, paramLabel = "<timeStats>",
+                    description = "Show time-based statistics (hourly or daily)")
+            String timeStats,
+            @Option(names = {"--top"}, paramLabel = "<topN>", description = "Show top N most frequent log messages")
+            Integer topN,
+            @Option(names = {"--summary"}, description = "Show comprehensive summary report")
+            boolean showSummary,
+            @Option(names = {"--export"}, paramLabel = "<exportFile>", description = "Export results to CSV file")
+            String exportFile,
+            @Option(names = {"--emit-partial"}, paramLabel = "<file>",
+                    description = "Save the merged counts as a partial, to merge again later")
+            File partialFile,
+            @Parameters(arity = "1..*", paramLabel = "<partial>", description = "Partial files to merge")
+            List<File> partials) throws Exception {
+        this.showStats = showStats;
+        this.timeStats = timeStats;
+        this.topN = topN;
+        this.showSummary = showSummary;
+        this.exportFile = exportFile;
+        this.partialFile = partialFile;
+
+        if (!validateReportOptions()) {
+            return 1;
+        }
+        if (newStatistics() == null && partialFile == null) {
+            err.println("Error: merge needs a report (--stats, --time-stats, --top or --summary) "
+                    + "or --emit-partial");
+            return 1;
+        }
+
+        out.println("Merging: " + partials.size() + " partial(s)");
+        LogStatistics merged = null;
+        for (File file : partials) {
+            if (!file.isFile()) {
+                err.println("Error: Partial not found - " + file.getPath());
+                return 1;
+            }
+            LogStatistics partial;
+            try {
+                partial = LogStatistics.load(file);
+            } catch (IOException e) {
+                err.println("Error reading partial: " + e.getMessage());
+                return 1;
+            }
+            if (merged == null) {
+                merged = partial;
+            } else if (merged.isMergeableWith(partial)) {
+                merged.merge(partial, 0);
+            } else {
+                err.println("Error: Partial was written with different --approx or --templates settings - "
+                        + file.getPath());
+                return 1;
+            }
+            out.println("  " + file.getPath() + " (" + partial.getTotalLogs() + " logs)");
+        }
+        out.println("---");
+
+        if (partialFile != null && !savePartial(merged)) {
+            return 1;
         }
+        displayReport(merged);
+        return 0;
+    }
 
-        String logDate = line.substring(0, 10);
+    @Command(
+            name = "serve",
+            mixinStandardHelpOptions = true,
+            description = "Answer queries over HTTP from a warm JVM, keeping each log's index and parsed columns "
+                    + "in memory between queries"
+    )
+    int serve(
+            @Option(names = {"--port"}, defaultValue = "7070",
+                    description = "Port to listen on, on the loopback interface only (default: 7070)")
+            int port,
+            @Option(names = {"--cache-memory"}, paramLabel = "<MB>", defaultValue = "512",
+                    description = "Memory for indexes and parsed columns, least recently used evicted first "
+                            + "(default: 512)")
+            long cacheMegabytes) throws Exception {
+        if (served != null) {
+            err.println("Error: serve is not available through the server");
+            return 1;
+        }
+        if (port < 0 || port > 65535 || cacheMegabytes <= 0) {
+            err.println("Error: --port must be 0-65535 and --cache-memory positive");
+            return 1;
+        }
 
+        QueryServer server;
         try {
-            LocalDate lineDate = LocalDate.parse(logDate);
+            server = QueryServer.start(port, new ServerCache(cacheMegabytes * 1024 * 1024));
+        } catch (IOException e) {
+            err.println("Error: cannot listen on port " + port + " - " + e.getMessage());
+            return 1;
+        }
+        out.println("Serving queries on http://127.0.0.1:" + server.getPort() + "/query (Ctrl+C to stop)");
+        server.awaitStop();
+        return 0;
+    }
 
-            // Check from date
-            if (fromDate != null) {
-                LocalDate from = LocalDate.parse(fromDate);
-                if (lineDate.isBefore(from)) {
-                    return false;
+    /**
+     * Follow the file, printing matches as they arrive or refreshing the
+     * selected report every interval, plus an error-rate signal over a
+     * sliding window of all lines (filters do not apply to it)
+     */
+    private void followLog() throws Exception {
+        LogStatistics stats = newStatistics();
+        ErrorRateWindow window = new ErrorRateWindow(windowSeconds);
+        LineWriter lines = stats == null ? lineWriter(false) : null;
+        LineSink sink = stats != null
+                ? stats
+                : new MatchPrinter(lines, filter.hasTextFilter());
+        BurstDetector bursts = detectBursts ? new BurstDetector() : null;
+
+        out.println("Following " + logFiles.get(0).getName() + " (Ctrl+C to stop)");
+
+        long[] lastRefresh = {System.currentTimeMillis()};
+        long[] linesAtRefresh = {-1};
+        String[] lastHealth = {null};
+
+        LogFollower follower = new LogFollower(logFiles.get(0), filter, format, 250);
+        follower.follow(() -> {
+            if (lines != null) {
+                lines.flush(); // Show new matches on every poll
+            }
+            if (bursts != null) {
+                // Alert on every poll rather than waiting for the refresh
+                bursts.closeQuietMinutes();
+                for (BurstDetector.Burst burst : bursts.takeEvents()) {
+                    printLiveBurst(burst);
                 }
             }
+            long now = System.currentTimeMillis();
+            if (now - lastRefresh[0] < refreshSeconds * 1000L) {
+                return;
+            }
+            lastRefresh[0] = now;
 
-            // Check to date
-            if (toDate != null) {
-                LocalDate to = LocalDate.parse(toDate);
-                if (lineDate.isAfter(to)) {
-                    return false;
+            String health = healthIndicator(window.getErrorRate());
+            if (stats != null) {
+                // Only redraw when something new arrived
+                if (stats.getTotalLogs() == linesAtRefresh[0]) {
+                    return;
+                }
+                linesAtRefresh[0] = stats.getTotalLogs();
+                out.println("\n--- Live update " + LocalDateTime.now().format(LIVE_TIME_FORMAT) + " ---");
+                if (stats.getTotalLogs() == 0) {
+                    out.println("No logs to analyze.");
+                } else {
+                    displayReport(stats);
                 }
+                printLiveHealth(window, health);
+            } else if (!health.equals(lastHealth[0]) && window.getTotal() > 0) {
+                printLiveHealth(window, health);
             }
+            lastHealth[0] = health;
+        }, window, bursts != null ? new LineSink[] {sink, bursts} : new LineSink[] {sink});
+    }
 
-            return true;
-        } catch (Exception e) {
-            // If date parsing fails, exclude the line
-            return false;
+    private void printLiveBurst(BurstDetector.Burst burst) {
+        if (!burst.isEnded()) {
+            out.println(String.format("[ BURST ] %s since %s (usually %.1f/min)",
+                    burst.getSeries(), minuteText(burst.getStartMinute()), burst.getExpected()));
+            return;
         }
+        List<Map.Entry<String, Long>> top = burst.topMessages(1);
+        out.println(String.format("[ BURST ENDED ] %s %s: %d lines, peak %d/min%s",
+                burst.getSeries(), burstWindow(burst), burst.getLines(), burst.getPeak(),
+                top.isEmpty() ? "" : "; top: " + top.get(0).getKey() + " (" + top.get(0).getValue() + ")"));
     }
 
-    private void displayAllFilters() throws Exception {
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-            int matchCount = 0;
-            int lineNumber = 0;
+    /**
+     * Writer for matching lines: standard output directly, or the server response
+     */
+    private LineWriter lineWriter(boolean async) {
+        return lineOut != null ? new LineWriter(lineOut, StandardCharsets.UTF_8, async) : LineWriter.stdout(async);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
+    private void printLiveHealth(ErrorRateWindow window, String health) {
+        out.println(String.format("[ LIVE HEALTH - last %ds: %.1f%% errors over %d logs ]",
+                window.getWindowSeconds(), window.getErrorRate(), window.getTotal()));
+        out.println(health);
+    }
 
-                // Apply date filter
-                if (!matchesDateFilter(line)) {
-                    continue;
-                }
+    private void printApproximationNote(LogStatistics stats) {
+        HeavyHitters sketch = stats.getMessageSketch();
+        out.println("  Approximate counts from " + sketch.getCapacity() + " counters: each count may be too high"
+                + " by its error, at most " + sketch.maxError() + " overall");
+    }
 
-                // Apply level filter (if specified)
-                if (logLevel != null && !line.contains(logLevel.toUpperCase())) {
-                    continue;
-                }
+    private static String healthIndicator(double errorRate) {
+        if (errorRate > 20) {
+            return "  [!] HIGH ERROR RATE - Investigation recommended";
+        } else if (errorRate > 10) {
+            return "  [!] ELEVATED ERROR RATE - Monitor closely";
+        }
+        return "  [OK] Error rate within normal range";
+    }
 
-                // Apply search filter (if specified)
-                if (searchTerm != null && !line.toLowerCase().contains(searchTerm.toLowerCase())) {
-                    continue;
-                }
+    /**
+     * Print one line and the byte offset it starts at, found from the closest index checkpoint
+     */
+    private boolean printLine() throws IOException {
+        LogScanner fileScanner = scanner.getScanners().get(0);
+        File file = fileScanner.getLogFile();
+        if (fileScanner.getCompression() != Compression.NONE) {
+            err.println("Error: --line needs an uncompressed file - " + file.getPath());
+            return false;
+        }
+
+        LineLocator.Location location = LineLocator.locate(file, fileScanner.getIndex(), lineNumber);
+        if (location == null) {
+            err.println("Error: " + file.getPath() + " has fewer than " + lineNumber + " lines");
+            return false;
+        }
+        String checkpoint = location.checkpointLine() > 0
+                ? "from the index checkpoint at line " + (location.checkpointLine() + 1)
+                + ", byte " + location.checkpointOffset()
+                : "from the start of the file";
+        out.println("Line " + lineNumber + " starts at byte offset " + location.offset()
+                + " (counted " + checkpoint + ")");
+        out.println("---");
+        out.println(LineLocator.readLine(file, location.offset()));
+        return true;
+    }
+
+    /**
+     * Print the run's cost, or append it to the JSON file
+     */
+    private void displayMetrics() {
+        if (metricsFile != null) {
+            List<String> files = logFiles.stream().map(File::getPath).collect(Collectors.toList());
+            try (FileWriter writer = new FileWriter(metricsFile, StandardCharsets.UTF_8, true)) {
+                writer.write(metrics.toJson(files, threads) + "\n");
+            } catch (IOException e) {
+                err.println("Error writing metrics: " + e.getMessage());
+            }
+        }
+        if (!showMetrics) {
+            return;
+        }
 
-                // Apply regex filter (if specified)
-                if (regexPattern != null) {
-                    Pattern pattern = Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = pattern.matcher(line);
-                    if (!matcher.find()) {
+        long wallNanos = metrics.getWallNanos();
+        double seconds = Math.max(wallNanos, 1) / 1e9;
+        out.println("\n" + "=".repeat(60));
+        out.println("RUN METRICS");
+        out.println("=".repeat(60));
+        out.println(String.format("%-20s %.3f s", "Wall time:", seconds));
+        if (!metrics.isMeasured()) {
+            out.println("Stage times are only measured when uncompressed files are read directly,");
+            out.println("not from the cache or when several files are listed in time order.");
+        } else {
+            out.println(String.format("%-20s %s in %d lines", "Read:",
+                    formatFileSize(metrics.getBytesRead()), metrics.getLinesRead()));
+            out.println(String.format("%-20s %s/s, %d lines/s", "Throughput:",
+                    formatFileSize((long) (metrics.getBytesRead() / seconds)),
+                    (long) (metrics.getLinesRead() / seconds)));
+            out.println(String.format("%-20s %d", "Lines matched:", metrics.getLinesMatched()));
+
+            String[] stages = {"read", "parse", "filter", "aggregate", "output"};
+            long[] stageNanos = {metrics.getReadNanos(), metrics.getParseNanos(), metrics.getFilterNanos(),
+                    metrics.getAggregateNanos(), metrics.getOutputNanos()};
+            long totalNanos = 0;
+            int largest = 0;
+            for (int i = 0; i < stages.length; i++) {
+                totalNanos += stageNanos[i];
+                if (stageNanos[i] > stageNanos[largest]) {
+                    largest = i;
+                }
+            }
+            out.println("-".repeat(60));
+            out.println(String.format("%-20s %-15s %-15s", "Stage", "Time (ms)", "Share"));
+            for (int i = 0; i < stages.length; i++) {
+                out.println(String.format("%-20s %-15d %-15s", stages[i], stageNanos[i] / 1_000_000,
+                        String.format("%.1f%%", stageNanos[i] * 100.0 / Math.max(totalNanos, 1))));
+            }
+            if (threads != 1) {
+                out.println("(stage times are summed over all scanning threads)");
+            }
+            String bound = switch (stages[largest]) {
+                case "read" -> "reading the file (disk or page cache)";
+                case "output" -> "writing the output";
+                default -> "CPU";
+            };
+            out.println(String.format("%-20s %s (%.1f%%), bound by %s", "Largest stage:", stages[largest],
+                    stageNanos[largest] * 100.0 / Math.max(totalNanos, 1), bound));
+
+            if (!filter.isEmpty()) {
+                List<String> checks = metrics.getCheckNames();
+                long[] rejected = metrics.getRejected();
+                out.println("-".repeat(60));
+                out.println(String.format("%-20s %-15s", "Rejected by", "Lines"));
+                for (int i = 0; i < checks.size(); i++) {
+                    // Only the checks given on the command line
+                    if ((i == LogFilter.DATE && !filter.hasDateFilter())
+                            || (i == LogFilter.LEVEL && filter.getLevel() == null)) {
                         continue;
                     }
+                    out.println(String.format("%-20s %-15d", checks.get(i), rejected[i]));
                 }
-
-                // If we get here, line matches ALL filters
-                if (searchTerm != null || regexPattern != null) {
-                    // Show line numbers when searching
-                    System.out.println("[Line " + lineNumber + "] " + line);
-                } else {
-                    System.out.println(line);
-                }
-                matchCount++;
             }
-
-            System.out.println("\n--- Found " + matchCount + " matching lines ---");
         }
+        out.println("-".repeat(60));
+        out.println(String.format("%-20s %s", "Peak heap:", formatFileSize(RunMetrics.peakHeapBytes())));
+        out.println(String.format("%-20s %d collections, %d ms", "GC:",
+                RunMetrics.gcCount(), RunMetrics.gcMillis()));
+        out.println("=".repeat(60) + "\n");
     }
 
-    private void displayStatistics() throws Exception {
-        // Count logs by level
-        Map<String, Integer> levelCounts = new HashMap<>();
-        int totalLogsTemp = 0;
+    private long countLines() throws Exception {
+        return scanner.countLines();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
+    private String formatFileSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
 
-            while ((line = reader.readLine()) != null) {
-                // Apply date filter if specified
-                if (!matchesDateFilter(line)) {
-                    continue;
-                }
 
-                // Apply search filter if specified
-                if (searchTerm != null && !line.toLowerCase().contains(searchTerm.toLowerCase())) {
-                    continue;
-                }
 
-                // Apply regex filter if specified
-                if (regexPattern != null) {
-                    Pattern pattern = Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = pattern.matcher(line);
-                    if (!matcher.find()) {
-                        continue;
-                    }
-                }
+    private void displayAllFilters() throws Exception {
+        // Show line numbers when searching
+        boolean showLineNumbers = filter.hasTextFilter();
+
+        // Per-pattern counts are only worth showing with more than one pattern
+        PatternHits hits = filter.getPatternCount() > 1 ? new PatternHits(filter.getPatternGroups()) : null;
+
+        long matchCount;
+        try (LineWriter lines = lineWriter(asyncOutput)) {
+            if (logFiles.size() == 1) {
+                MatchPrinter printer = new MatchPrinter(lines, showLineNumbers, hits);
+                scanner.scan(filter, printer, printer::newPartial);
+                matchCount = printer.getMatchCount();
+            } else {
+                // Several files: interleave their lines by timestamp
+                List<File> candidates = scanner.candidates(filter).stream()
+                        .map(LogScanner::getLogFile)
+                        .collect(Collectors.toList());
+                printSkippedFiles();
+                matchCount = new TimeOrderedPrinter(lines, showLineNumbers, hits, format).print(candidates, filter);
+            }
+        }
+        out.println("\n--- Found " + matchCount + " matching lines ---");
+        displayPatternHits(hits);
+    }
 
-                // Apply level filter if specified
-                if (logLevel != null && !line.contains(logLevel.toUpperCase())) {
-                    continue;
-                }
+    /**
+     * Stream matching lines to the export file, one file after the other
+     */
+    private void exportLines() throws Exception {
+        LineExporter.Format recordFormat = exportFormat != null
+                ? exportFormat
+                : LineExporter.Format.forFile(exportLinesFile.getName());
+        try (LineExporter exporter = LineExporter.open(exportLinesFile, recordFormat, logFiles.size() > 1)) {
+            for (LogScanner fileScanner : scanner.candidates(filter)) {
+                File file = fileScanner.getLogFile();
+                // Parallel gzip segments do not know their offsets in the inflated stream
+                LogScanner source = fileScanner.getCompression() == Compression.NONE
+                        ? fileScanner
+                        : new LogScanner(file, 1, format);
+                exporter.startFile(file.getName());
+                source.scan(filter, exporter, exporter::newPartial);
+            }
+            printSkippedFiles();
+            out.println("Exported " + exporter.getExported() + " lines to: " + exportLinesFile.getPath());
+        } catch (IOException | UncheckedIOException e) {
+            err.println("Error exporting lines: " + e.getMessage());
+        }
+    }
 
-                // Extract log level from line
-                String level = extractLogLevel(line);
-                if (level != null) {
-                    levelCounts.put(level, levelCounts.getOrDefault(level, 0) + 1);
-                    totalLogsTemp++;
-                }
+    /**
+     * Count matches without printing them; with no text filter the count
+     * may come from the index or cache without reading the log
+     */
+    private void displayMatchCount() throws Exception {
+        PatternHits hits = filter.getPatternCount() > 1 ? new PatternHits(filter.getPatternGroups()) : null;
+        MatchCounter counter = new MatchCounter(hits);
+        scanner.scan(filter, counter, counter::newPartial);
+        printSkippedFiles();
+        out.println("--- Found " + counter.getMatchCount() + " matching lines ---");
+        displayPatternHits(hits);
+    }
+
+    private void displayPatternHits(PatternHits hits) {
+        if (hits == null) {
+            return;
+        }
+        out.println(String.format("%-50s %s", "Pattern", "Lines"));
+        out.println("-".repeat(60));
+        List<PatternSet> groups = hits.getGroups();
+        for (int group = 0; group < groups.size(); group++) {
+            PatternSet patterns = groups.get(group);
+            for (int i = 0; i < patterns.size(); i++) {
+                String label = patterns.label(i);
+                String displayLabel = label.length() > 50 ? label.substring(0, 47) + "..." : label;
+                out.println(String.format("%-50s %d", displayLabel, hits.getHits(group, i)));
             }
         }
-        final int totalLogs = totalLogsTemp;
+    }
+
+    private static String quoteAll(List<String> values) {
+        return values.stream().map(value -> "'" + value + "'").collect(Collectors.joining(" or "));
+    }
+
+    private void printSkippedFiles() {
+        if (logFiles.size() > 1 && scanner.getSkippedFiles() > 0) {
+            out.println("Skipped " + scanner.getSkippedFiles() + " file(s) outside the date range");
+        }
+    }
+
+    private void displayStatistics(LogStatistics stats) {
+        Map<String, Long> levelCounts = stats.getLevelCounts();
+        final long totalLogs = stats.getLevelTotal();
 
         // Display statistics
         if (totalLogs == 0) {
-            System.out.println("No logs to analyze.");
+            out.println("No logs to analyze.");
             return;
         }
         // Check if we should export to CSV or print to console
@@ -322,94 +1142,47 @@ public class LogAnalyzerApp implements Callable<Integer> {
             try {
                 exporter.exportLevelStats(levelCounts, totalLogs);
             } catch (Exception e) {
-                System.err.println("Error exporting to CSV: " + e.getMessage());
+                err.println("Error exporting to CSV: " + e.getMessage());
             }
         } else {
-            System.out.println("\n" + "=".repeat(60));
-            System.out.println("LOG LEVEL STATISTICS");
-            System.out.println("=".repeat(60));
-            System.out.println(String.format("%-15s %-15s %-15s", "Level", "Count", "Percentage"));
-            System.out.println("-".repeat(60));
+            out.println("\n" + "=".repeat(60));
+            out.println("LOG LEVEL STATISTICS");
+            out.println("=".repeat(60));
+            out.println(String.format("%-15s %-15s %-15s", "Level", "Count", "Percentage"));
+            out.println("-".repeat(60));
 
             // Sort by count (descending)
             levelCounts.entrySet().stream()
                     .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
                     .forEach(entry -> {
                         String level = entry.getKey();
-                        int count = entry.getValue();
+                        long count = entry.getValue();
                         double percentage = (count * 100.0) / totalLogs;
-                        System.out.println(String.format("%-15s %-15d %-15.2f%%",
+                        out.println(String.format("%-15s %-15d %-15.2f%%",
                                 level, count, percentage));
                     });
 
-            System.out.println("-".repeat(60));
-            System.out.println(String.format("%-15s %-15d", "TOTAL", totalLogs));
-            System.out.println("=".repeat(60) + "\n");
+            out.println("-".repeat(60));
+            out.println(String.format("%-15s %-15d", "TOTAL", totalLogs));
+            out.println("=".repeat(60) + "\n");
         }
     }
 
-    private String extractLogLevel(String line) {
-        // Common log levels to look for
-        String[] levels = {"ERROR", "WARN", "INFO", "DEBUG", "TRACE", "FATAL"};
-
-        for (String level : levels) {
-            if (line.contains(level)) {
-                return level;
-            }
-        }
-
-        return null; // No level found
-    }
-
-    private void displayTimeStatistics() throws Exception {
-        if (timeStats == null || (!timeStats.equals("hourly") && !timeStats.equals("daily"))) {
-            System.err.println("Error: --time-stats must be 'hourly' or 'daily'");
-            return;
-        }
-
-        Map<String, Integer> timeCounts = new HashMap<>();
-        int totalLogs = 0;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                // Apply all filters
-                if (!matchesDateFilter(line)) {
-                    continue;
-                }
-
-                if (logLevel != null && !line.contains(logLevel.toUpperCase())) {
-                    continue;
-                }
-
-                if (searchTerm != null && !line.toLowerCase().contains(searchTerm.toLowerCase())) {
-                    continue;
-                }
-
-                if (regexPattern != null) {
-                    Pattern pattern = Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = pattern.matcher(line);
-                    if (!matcher.find()) {
-                        continue;
-                    }
-                }
-
-                // Extract time period from line
-                String timePeriod = extractTimePeriod(line, timeStats);
-                if (timePeriod != null) {
-                    timeCounts.put(timePeriod, timeCounts.getOrDefault(timePeriod, 0) + 1);
-                    totalLogs++;
-                }
-            }
+    private void displayTimeStatistics(LogStatistics stats) {
+        Map<String, Long> timeCounts = stats.getTimeCounts();
+        long totalLogs = stats.getTimeTotal();
+        if (!timeStats.equals(stats.getTimeMode())) {
+            // Partials keep hourly buckets; their daily buckets are the date counts
+            timeCounts = stats.getDateCounts();
+            totalLogs = timeCounts.values().stream().mapToLong(Long::longValue).sum();
         }
 
         if (totalLogs == 0) {
-            System.out.println("No logs to analyze.");
+            out.println("No logs to analyze.");
             return;
         }
 
-        final int finalTotal = totalLogs;
+        final long finalTotal = totalLogs;
 
         // Check if we should export to CSV or print to console
         if (exportFile != null) {
@@ -418,310 +1191,310 @@ public class LogAnalyzerApp implements Callable<Integer> {
             try {
                 exporter.exportTimeStats(timeCounts, timeStats.substring(0, 1).toUpperCase() + timeStats.substring(1));
             } catch (Exception e) {
-                System.err.println("Error exporting to CSV: " + e.getMessage());
+                err.println("Error exporting to CSV: " + e.getMessage());
             }
         } else {
             // Display statistics
-            System.out.println("\n" + "=".repeat(60));
-            System.out.println("TIME-BASED STATISTICS (" + timeStats.toUpperCase() + ")");
-            System.out.println("=".repeat(60));
-            System.out.println(String.format("%-25s %-15s %-15s", "Time Period", "Count", "Percentage"));
-            System.out.println("-".repeat(60));
+            out.println("\n" + "=".repeat(60));
+            out.println("TIME-BASED STATISTICS (" + timeStats.toUpperCase() + ")");
+            out.println("=".repeat(60));
+            out.println(String.format("%-25s %-15s %-15s", "Time Period", "Count", "Percentage"));
+            out.println("-".repeat(60));
 
             // Sort by time period (chronological)
             timeCounts.entrySet().stream()
                     .sorted(Map.Entry.comparingByKey())
                     .forEach(entry -> {
                         String period = entry.getKey();
-                        int count = entry.getValue();
+                        long count = entry.getValue();
                         double percentage = (count * 100.0) / finalTotal;
-                        System.out.println(String.format("%-25s %-15d %-15.2f%%",
+                        out.println(String.format("%-25s %-15d %-15.2f%%",
                                 period, count, percentage));
                     });
 
-            System.out.println("-".repeat(60));
-            System.out.println(String.format("%-25s %-15d", "TOTAL", finalTotal));
-            System.out.println("=".repeat(60) + "\n");
+            out.println("-".repeat(60));
+            out.println(String.format("%-25s %-15d", "TOTAL", finalTotal));
+            out.println("=".repeat(60) + "\n");
         }
     }
 
-    private String extractTimePeriod(String line, String mode) {
-        // Log format: "2024-12-09 10:00:01 INFO ..."
-        if (line.length() < 19) {
-            return null;
+    private void displayBucketAnalytics(BucketAnalytics analytics) {
+        List<BucketAnalytics.Bucket> buckets = analytics.getBuckets();
+        if (buckets.isEmpty()) {
+            out.println("No logs to analyze.");
+            return;
         }
 
-        try {
-            if (mode.equals("daily")) {
-                // Extract date: "2024-12-09"
-                return line.substring(0, 10);
-            } else if (mode.equals("hourly")) {
-                // Round to hour: "2024-12-09 10:00"
-                return line.substring(0, 13) + ":00";
-            }
-        } catch (Exception e) {
-            return null;
+        if (exportFile != null) {
+            CSVExporter exporter = new CSVExporter(exportFile);
+            try {
+                exporter.exportBuckets(buckets);
+            } catch (Exception e) {
+                err.println("Error exporting to CSV: " + e.getMessage());
+            }
+        } else {
+            String latencyHeader = analytics.getLatencyField() + " (ms)";
+            out.println("\n" + "=".repeat(100));
+            out.println("BUCKET ANALYTICS (" + bucketWidth + ")");
+            out.println("=".repeat(100));
+            out.println(String.format("%-20s %-10s %-10s %-9s %-10s %-9s %-9s %-9s %-9s",
+                    "Bucket", "Lines", "Errors", "Error %", latencyHeader, "p50", "p95", "p99", "max").stripTrailing());
+            out.println("-".repeat(100));
+
+            // A month at minute granularity is tens of thousands of rows, too many for String.format
+            StringBuilder rows = new StringBuilder(buckets.size() * 100);
+            for (BucketAnalytics.Bucket bucket : buckets) {
+                appendBucketRow(rows, bucket.period(), bucket.lines(), bucket.errors(), bucket.errorRate(),
+                        bucket.latencies());
+            }
+            long totalLines = analytics.getTotalLines();
+            double errorRate = (analytics.getTotalErrors() * 100.0) / totalLines;
+            rows.append("-".repeat(100)).append(System.lineSeparator());
+            appendBucketRow(rows, "TOTAL", totalLines, analytics.getTotalErrors(), errorRate,
+                    analytics.getTotalLatencies());
+            out.print(rows);
+            out.println("=".repeat(100));
+            if (analytics.getTotalLatencies().getTotalCount() == 0) {
+                out.println("No latencies found: no message has a '" + analytics.getLatencyField()
+                        + "=<number>[unit]' field (see --latency-field)");
+            }
+            if (analytics.getUndatedLines() > 0) {
+                out.println("Note: " + analytics.getUndatedLines()
+                        + " matching line(s) without a date are not in any bucket");
+            }
+            out.println();
         }
-
-        return null;
     }
 
-    private void displayTopMessages() throws Exception {
-        if (topN == null || topN <= 0) {
-            System.err.println("Error: --top must be a positive number");
-            return;
+    private static void appendBucketRow(StringBuilder row, String period, long lines, long errors,
+                                        double errorRate, LatencyHistogram latencies) {
+        appendColumn(row, period, 21);
+        appendColumn(row, Long.toString(lines), 11);
+        appendColumn(row, Long.toString(errors), 11);
+        appendColumn(row, decimal(errorRate, 100) + "%", 10);
+        if (latencies == null || latencies.getTotalCount() == 0) {
+            row.append("0          -         -         -         -");
+        } else {
+            long[] percentiles = latencies.percentiles(50, 95, 99);
+            appendColumn(row, Long.toString(latencies.getTotalCount()), 11);
+            for (long micros : percentiles) {
+                appendColumn(row, decimal(micros / 1000.0, 10), 10);
+            }
+            row.append(decimal(latencies.getMaxValue() / 1000.0, 10));
         }
+        row.append(System.lineSeparator());
+    }
 
-        Map<String, Integer> messageCounts = new HashMap<>();
-        int totalLogs = 0;
+    // Left-aligned in width characters, with at least one space after it
+    private static void appendColumn(StringBuilder row, String value, int width) {
+        row.append(value).append(" ".repeat(Math.max(1, width - value.length())));
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
+    // Rounded to 1 / scale, e.g. decimal(5.256, 100) is "5.26"
+    private static String decimal(double value, int scale) {
+        long scaled = Math.round(value * scale);
+        String fraction = Long.toString(scale + scaled % scale).substring(1);
+        return scaled / scale + "." + fraction;
+    }
 
-            while ((line = reader.readLine()) != null) {
-                // Apply all filters
-                if (!matchesDateFilter(line)) {
-                    continue;
-                }
+    private void displayBursts(BurstDetector detector) {
+        if (detector == null) {
+            return;
+        }
+        List<BurstDetector.Burst> bursts = detector.getBursts();
 
-                if (logLevel != null && !line.contains(logLevel.toUpperCase())) {
-                    continue;
-                }
+        out.println("\n" + "=".repeat(70));
+        out.println("BURSTS (per-minute counts " + BurstDetector.Z + "+ standard deviations above their baseline)");
+        out.println("=".repeat(70));
+        if (bursts.isEmpty()) {
+            out.println("No bursts: every level and message template stayed near its usual rate per minute");
+        }
+        for (int i = 0; i < bursts.size(); i++) {
+            BurstDetector.Burst burst = bursts.get(i);
+            out.println(String.format("[%d] %s  %s", i + 1, burstWindow(burst), burst.getSeries()));
+            out.println(String.format("    %d lines, peak %d/min at %s vs %.1f/min expected (z = %.1f)",
+                    burst.getLines(), burst.getPeak(), minuteText(burst.getPeakMinute()).substring(11),
+                    burst.getExpected(), burst.getPeakScore()));
+            for (Map.Entry<String, Long> entry : burst.topMessages(3)) {
+                String msg = entry.getKey().length() > 55 ? entry.getKey().substring(0, 55) + "..." : entry.getKey();
+                out.println(String.format("    [%4d] %s", entry.getValue(), msg));
+            }
+        }
+        out.println("-".repeat(70));
+        out.println("Watched " + detector.getLevelSeriesCount() + " level(s) and " + detector.getTemplateSeriesCount()
+                + " message template(s); " + bursts.size() + " burst(s)");
+        if (detector.getUndatedLines() > 0) {
+            out.println("Note: " + detector.getUndatedLines() + " matching line(s) without a date were not counted");
+        }
+        out.println("=".repeat(70) + "\n");
+    }
 
-                if (searchTerm != null && !line.toLowerCase().contains(searchTerm.toLowerCase())) {
-                    continue;
-                }
+    // "2024-12-09 10:05 - 10:10 (5 min)", with the end date when it differs
+    private static String burstWindow(BurstDetector.Burst burst) {
+        String start = minuteText(burst.getStartMinute());
+        String end = minuteText(burst.getEndMinute());
+        return start + " - " + (end.startsWith(start.substring(0, 10)) ? end.substring(11) : end)
+                + " (" + (burst.getEndMinute() - burst.getStartMinute()) + " min)";
+    }
 
-                if (regexPattern != null) {
-                    Pattern pattern = Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = pattern.matcher(line);
-                    if (!matcher.find()) {
-                        continue;
-                    }
-                }
+    private static String minuteText(long epochMinute) {
+        return LocalDateTime.ofEpochSecond(epochMinute * 60, 0, ZoneOffset.UTC).format(MINUTE_FORMAT);
+    }
 
-                // Extract message content (everything after log level)
-                String message = extractMessage(line);
-                if (message != null) {
-                    messageCounts.put(message, messageCounts.getOrDefault(message, 0) + 1);
-                    totalLogs++;
-                }
-            }
-        }
+    private void displayTopMessages(LogStatistics stats) {
+        long totalLogs = stats.getMessageTotal();
 
         if (totalLogs == 0) {
-            System.out.println("No logs to analyze.");
+            out.println("No logs to analyze.");
             return;
         }
 
-        final int finalTotal = totalLogs;
+        final long finalTotal = totalLogs;
+        List<Map.Entry<String, Long>> topMessages = stats.topMessages(topN);
+        boolean approximate = stats.isMessageCountApproximate();
 
         // Check if we should export to CSV or print to console
         if (exportFile != null) {
             // Export to CSV
-            // First, get the top N messages
-            List<Map.Entry<String, Integer>> topMessages = messageCounts.entrySet().stream()
-                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                    .limit(topN)
-                    .collect(Collectors.toList());
-
             CSVExporter exporter = new CSVExporter(exportFile);
             try {
-                exporter.exportTopMessages(topMessages, finalTotal);
+                if (approximate) {
+                    exporter.exportTopMessages(topMessages, finalTotal, stats::getMessageError);
+                } else {
+                    exporter.exportTopMessages(topMessages, finalTotal);
+                }
             } catch (Exception e) {
-                System.err.println("Error exporting to CSV: " + e.getMessage());
+                err.println("Error exporting to CSV: " + e.getMessage());
             }
         } else {
             // Display statistics
-            System.out.println("\n" + "=".repeat(80));
-            System.out.println("TOP " + topN + " MOST FREQUENT LOG MESSAGES");
-            System.out.println("=".repeat(80));
-            System.out.println(String.format("%-50s %-12s %-12s", "Message", "Count", "Percentage"));
-            System.out.println("-".repeat(80));
-
-            // Sort by count descending and limit to topN
-            messageCounts.entrySet().stream()
-                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                    .limit(topN)
-                    .forEach(entry -> {
-                        String message = entry.getKey();
-                        int count = entry.getValue();
-                        double percentage = (count * 100.0) / finalTotal;
-
-                        // Truncate long messages
-                        String displayMessage = message.length() > 47 ?
-                                message.substring(0, 47) + "..." : message;
-
-                        System.out.println(String.format("%-50s %-12d %-12.2f%%",
-                                displayMessage, count, percentage));
-                    });
-
-            System.out.println("-".repeat(80));
-            System.out.println(String.format("%-50s %-12d", "TOTAL LOGS ANALYZED", finalTotal));
-            System.out.println("=".repeat(80) + "\n");
-        }
-    }
+            out.println("\n" + "=".repeat(80));
+            out.println("TOP " + topN + (stats.isCountingTemplates()
+                    ? " MOST FREQUENT LOG MESSAGE TEMPLATES" : " MOST FREQUENT LOG MESSAGES"));
+            out.println("=".repeat(80));
+            if (approximate) {
+                out.println(String.format("%-50s %-12s %-8s %-8s", "Message", "Count", "Error", "Percentage"));
+            } else {
+                out.println(String.format("%-50s %-12s %-12s",
+                        stats.isCountingTemplates() ? "Template" : "Message", "Count", "Percentage"));
+            }
+            out.println("-".repeat(80));
 
-    private String extractMessage(String line) {
-        // Log format: "2024-12-09 10:00:01 INFO Message content here"
-        // We want to extract "Message content here"
+            for (Map.Entry<String, Long> entry : topMessages) {
+                String message = entry.getKey();
+                long count = entry.getValue();
+                double percentage = (count * 100.0) / finalTotal;
 
-        String[] levels = {"ERROR", "WARN", "INFO", "DEBUG", "TRACE", "FATAL"};
+                // Truncate long messages
+                String displayMessage = message.length() > 47 ?
+                        message.substring(0, 47) + "..." : message;
 
-        for (String level : levels) {
-            int levelIndex = line.indexOf(level);
-            if (levelIndex != -1) {
-                // Get everything after the level and trim whitespace
-                int messageStart = levelIndex + level.length();
-                if (messageStart < line.length()) {
-                    return line.substring(messageStart).trim();
+                if (approximate) {
+                    out.println(String.format("%-50s %-12d +/-%-5d %-8.2f%%",
+                            displayMessage, count, stats.getMessageError(message), percentage));
+                } else {
+                    out.println(String.format("%-50s %-12d %-12.2f%%",
+                            displayMessage, count, percentage));
                 }
             }
-        }
 
-        return null;
+            out.println("-".repeat(80));
+            out.println(String.format("%-50s %-12d", "TOTAL LOGS ANALYZED", finalTotal));
+            if (approximate) {
+                printApproximationNote(stats);
+            }
+            out.println("=".repeat(80) + "\n");
+        }
     }
 
-    private void displaySummary() throws Exception {
-        // CSV export not supported for summary
-        if (exportFile != null) {
-            System.err.println("Error: CSV export is not supported for --summary");
-            System.err.println("Summary is a comprehensive visual report designed for console viewing.");
-            System.err.println("Use --stats, --time-stats, or --top with --export instead.");
+    private void displaySummary(LogStatistics stats) {
+        Map<String, Long> levelCounts = stats.getLevelCounts();
+        Map<String, Long> dateCounts = stats.getDateCounts();
+        long totalLogs = stats.getTotalLogs();
+        String firstDate = stats.getFirstDate();
+        String lastDate = stats.getLastDate();
+
+        if (totalLogs == 0) {
+            out.println("No logs to analyze.");
             return;
         }
 
-        Map<String, Integer> levelCounts = new HashMap<>();
-        Map<String, Integer> dateCounts = new HashMap<>();
-        Map<String, Integer> messageCounts = new HashMap<>();
-        int totalLogs = 0;
-        String firstDate = null;
-        String lastDate = null;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                // Apply filters
-                if (!matchesDateFilter(line)) {
-                    continue;
-                }
-
-                if (logLevel != null && !line.contains(logLevel.toUpperCase())) {
-                    continue;
-                }
-
-                if (searchTerm != null && !line.toLowerCase().contains(searchTerm.toLowerCase())) {
-                    continue;
-                }
-
-                if (regexPattern != null) {
-                    Pattern pattern = Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = pattern.matcher(line);
-                    if (!matcher.find()) {
-                        continue;
-                    }
-                }
+        final long finalTotal = totalLogs;
 
-                totalLogs++;
-
-                // Track log levels
-                String level = extractLogLevel(line);
-                if (level != null) {
-                    levelCounts.put(level, levelCounts.getOrDefault(level, 0) + 1);
-                }
-
-                // Track dates
-                if (line.length() >= 10) {
-                    String date = line.substring(0, 10);
-                    dateCounts.put(date, dateCounts.getOrDefault(date, 0) + 1);
-
-                    if (firstDate == null || date.compareTo(firstDate) < 0) {
-                        firstDate = date;
-                    }
-                    if (lastDate == null || date.compareTo(lastDate) > 0) {
-                        lastDate = date;
-                    }
-                }
-
-                // Track messages
-                String message = extractMessage(line);
-                if (message != null) {
-                    messageCounts.put(message, messageCounts.getOrDefault(message, 0) + 1);
-                }
+        if (exportFile != null) {
+            try {
+                new CSVExporter(exportFile).exportSummary(stats, 5);
+            } catch (Exception e) {
+                err.println("Error exporting to CSV: " + e.getMessage());
             }
-        }
-
-        if (totalLogs == 0) {
-            System.out.println("No logs to analyze.");
             return;
         }
 
-        final int finalTotal = totalLogs;
-
         // Display comprehensive summary
-        System.out.println("\n" + "=".repeat(70));
-        System.out.println("COMPREHENSIVE LOG SUMMARY");
-        System.out.println("=".repeat(70));
+        out.println("\n" + "=".repeat(70));
+        out.println("COMPREHENSIVE LOG SUMMARY");
+        out.println("=".repeat(70));
 
         // Basic info
-        System.out.println("\n[ OVERVIEW ]");
-        System.out.println("  Total logs analyzed: " + totalLogs);
-        System.out.println("  Date range: " + firstDate + " to " + lastDate);
-        System.out.println("  Unique dates: " + dateCounts.size());
-        System.out.println("  Unique messages: " + messageCounts.size());
+        out.println("\n[ OVERVIEW ]");
+        out.println("  Total logs analyzed: " + totalLogs);
+        out.println("  Date range: " + firstDate + " to " + lastDate);
+        out.println("  Unique dates: " + dateCounts.size());
+        if (stats.isMessageCountApproximate()) {
+            out.println("  Unique messages: more than " + stats.getUniqueMessages() + " (approximate)");
+        } else if (stats.isCountingTemplates()) {
+            out.println("  Unique message templates: " + stats.getUniqueMessages());
+        } else {
+            out.println("  Unique messages: " + stats.getUniqueMessages());
+        }
 
         // Log level breakdown
-        System.out.println("\n[ LOG LEVEL DISTRIBUTION ]");
+        out.println("\n[ LOG LEVEL DISTRIBUTION ]");
         levelCounts.entrySet().stream()
                 .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
                 .forEach(entry -> {
                     double percentage = (entry.getValue() * 100.0) / finalTotal;
-                    System.out.println(String.format("  %-10s %5d  (%5.1f%%)",
+                    out.println(String.format("  %-10s %5d  (%5.1f%%)",
                             entry.getKey(), entry.getValue(), percentage));
                 });
 
         // Busiest dates
-        System.out.println("\n[ TOP 5 BUSIEST DATES ]");
-        dateCounts.entrySet().stream()
-                .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                .limit(5)
+        out.println("\n[ TOP 5 BUSIEST DATES ]");
+        TopN.of(dateCounts, 5)
                 .forEach(entry -> {
                     double percentage = (entry.getValue() * 100.0) / finalTotal;
-                    System.out.println(String.format("  %s  %5d logs  (%5.1f%%)",
+                    out.println(String.format("  %s  %5d logs  (%5.1f%%)",
                             entry.getKey(), entry.getValue(), percentage));
                 });
 
         // Most common messages
-        System.out.println("\n[ TOP 5 MOST FREQUENT MESSAGES ]");
-        messageCounts.entrySet().stream()
-                .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                .limit(5)
+        out.println(stats.isCountingTemplates()
+                ? "\n[ TOP 5 MOST FREQUENT MESSAGE TEMPLATES ]" : "\n[ TOP 5 MOST FREQUENT MESSAGES ]");
+        stats.topMessages(5)
                 .forEach(entry -> {
                     String msg = entry.getKey().length() > 45 ?
                             entry.getKey().substring(0, 45) + "..." : entry.getKey();
-                    System.out.println(String.format("  [%2d] %s", entry.getValue(), msg));
+                    long error = stats.getMessageError(entry.getKey());
+                    out.println(String.format("  [%2d] %s", entry.getValue(), msg)
+                            + (error > 0 ? " (+/-" + error + ")" : ""));
                 });
+        if (stats.isMessageCountApproximate()) {
+            printApproximationNote(stats);
+        }
 
         // Health indicators
-        System.out.println("\n[ HEALTH INDICATORS ]");
-        int errorCount = levelCounts.getOrDefault("ERROR", 0);
-        int warnCount = levelCounts.getOrDefault("WARN", 0);
+        out.println("\n[ HEALTH INDICATORS ]");
+        long errorCount = levelCounts.getOrDefault("ERROR", 0L);
+        long warnCount = levelCounts.getOrDefault("WARN", 0L);
         double errorRate = (errorCount * 100.0) / finalTotal;
         double warnRate = (warnCount * 100.0) / finalTotal;
 
-        System.out.println(String.format("  Error rate: %.1f%% (%d errors)", errorRate, errorCount));
-        System.out.println(String.format("  Warning rate: %.1f%% (%d warnings)", warnRate, warnCount));
+        out.println(String.format("  Error rate: %.1f%% (%d errors)", errorRate, errorCount));
+        out.println(String.format("  Warning rate: %.1f%% (%d warnings)", warnRate, warnCount));
 
-        if (errorRate > 20) {
-            System.out.println("  [!] HIGH ERROR RATE - Investigation recommended");
-        } else if (errorRate > 10) {
-            System.out.println("  [!] ELEVATED ERROR RATE - Monitor closely");
-        } else {
-            System.out.println("  [OK] Error rate within normal range");
-        }
+        out.println(healthIndicator(errorRate));
 
-        System.out.println("=".repeat(70) + "\n");
+        out.println("=".repeat(70) + "\n");
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,402 @@
+package com.woo.loganalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar sidecar cache ("&lt;log&gt;.cache") of the parsed fields of every line:
+ * <ul>
+ *   <li>one flags byte per line: level (ordinal + 1, 0 for none) plus has-date and has-time bits</li>
+ *   <li>epoch seconds of dated lines as zig-zag varint deltas</li>
+ *   <li>message IDs as varints into a dictionary of distinct messages (0 for no message)</li>
+ * </ul>
+ * Reports that only need these fields and filters without search or regex
+ * are answered from the columns without reading or parsing the log.
+ *
+ * Like {@link LogIndex}, the cache records the size and modification time
+ * of its log and the log format, and is ignored once any of them changes.
+ * The dictionary is capped; past the cap message IDs are not stored and
+ * message reports go back to the log.
+ */
+public class LogCache {
+
+    private static final int MAGIC = 0x4C41_4343; // "LACC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8 + 1 + 8 + 8 + 8 + 4;
+
+    // Distinct messages kept in the dictionary
+    static final int MAX_DICTIONARY_SIZE = 1_000_000;
+
+    private static final int LEVEL_MASK = 0x0F;
+    private static final int HAS_DATE = 0x10;
+    private static final int HAS_TIME = 0x20;
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final long lineCount;
+    private final boolean messagesComplete;
+    private final ByteBuffer flags;
+    private final ByteBuffer times;
+    private final ByteBuffer messages;
+    // Encoded dictionary of a loaded cache, decoded by the first feed that needs messages
+    private final ByteBuffer dictionaryEntries;
+    private final int dictionarySize;
+    private String[] dictionary;
+
+    private LogCache(long lineCount, boolean messagesComplete, ByteBuffer flags, ByteBuffer times,
+                     ByteBuffer messages, ByteBuffer dictionaryEntries, int dictionarySize, String[] dictionary) {
+        this.lineCount = lineCount;
+        this.messagesComplete = messagesComplete;
+        this.flags = flags;
+        this.times = times;
+        this.messages = messages;
+        this.dictionaryEntries = dictionaryEntries;
+        this.dictionarySize = dictionarySize;
+        this.dictionary = dictionary;
+    }
+
+    public static File cacheFileFor(File logFile) {
+        return new File(logFile.getPath() + ".cache");
+    }
+
+    /**
+     * Scan the whole log once and write its cache next to it
+     */
+    public static LogCache build(File logFile) throws IOException {
+        return build(logFile, LogFormat.DEFAULT);
+    }
+
+    /**
+     * Scan the whole log once, reading it with the given format, and write its cache next to it
+     */
+    public static LogCache build(File logFile, LogFormat format) throws IOException {
+        long lastModified = logFile.lastModified();
+        long fileSize = logFile.length();
+        File cacheFile = cacheFileFor(logFile);
+
+        // Columns are streamed to temporary files, so memory stays flat for any log size
+        File flagsFile = new File(cacheFile.getPath() + ".flags.tmp");
+        File timesFile = new File(cacheFile.getPath() + ".times.tmp");
+        File messagesFile = new File(cacheFile.getPath() + ".messages.tmp");
+        try {
+            Builder builder = new Builder(new FileOutputStream(flagsFile), new FileOutputStream(timesFile),
+                    new FileOutputStream(messagesFile));
+            try (builder) {
+                new LogScanner(logFile, 1, format).scan(LogFilter.of(null, null, null, null, null), builder);
+            }
+            write(cacheFile, fileSize, lastModified, format.fingerprint(), builder, flagsFile, timesFile,
+                    messagesFile);
+        } finally {
+            flagsFile.delete();
+            timesFile.delete();
+            messagesFile.delete();
+        }
+
+        LogCache cache = load(logFile, format);
+        if (cache == null) {
+            throw new IOException("Log changed while the cache was written - " + logFile.getPath());
+        }
+        return cache;
+    }
+
+    /**
+     * Scan the whole log once and keep its columns on the heap, without writing the cache file; for
+     * {@link ServerCache}
+     */
+    static LogCache buildInMemory(File logFile, LogFormat format) throws IOException {
+        long lastModified = logFile.lastModified();
+        long fileSize = logFile.length();
+
+        ByteArrayOutputStream flags = new ByteArrayOutputStream();
+        ByteArrayOutputStream times = new ByteArrayOutputStream();
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        Builder builder = new Builder(flags, times, messages);
+        try (builder) {
+            new LogScanner(logFile, 1, format).scan(LogFilter.of(null, null, null, null, null), builder);
+        }
+        if (logFile.length() != fileSize || logFile.lastModified() != lastModified) {
+            throw new IOException("Log changed while the cache was built - " + logFile.getPath());
+        }
+        return new LogCache(builder.lineCount, builder.messagesComplete, ByteBuffer.wrap(flags.toByteArray()),
+                ByteBuffer.wrap(times.toByteArray()), ByteBuffer.wrap(messages.toByteArray()), null,
+                builder.dictionary.size(), builder.dictionary.toArray(new String[0]));
+    }
+
+    private static void write(File cacheFile, long fileSize, long lastModified, long formatFingerprint,
+                              Builder builder, File flagsFile, File timesFile, File messagesFile)
+            throws IOException {
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try (OutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(formatFingerprint);
+            out.writeLong(builder.lineCount);
+            out.writeBoolean(builder.messagesComplete);
+            out.writeLong(flagsFile.length());
+            out.writeLong(timesFile.length());
+            out.writeLong(messagesFile.length());
+            out.writeInt(builder.dictionary.size());
+
+            Files.copy(flagsFile.toPath(), out);
+            Files.copy(timesFile.toPath(), out);
+            Files.copy(messagesFile.toPath(), out);
+            for (String message : builder.dictionary) {
+                byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load the cache for a log file
+     *
+     * @return the cache, or null if there is none or it no longer matches the file
+     */
+    public static LogCache load(File logFile) throws IOException {
+        return load(logFile, LogFormat.DEFAULT);
+    }
+
+    /**
+     * Load the cache for a log file read with the given format. The message
+     * dictionary is only decoded once a report needs the messages.
+     *
+     * @return the cache, or null if there is none or it no longer matches the file or format
+     */
+    public static LogCache load(File logFile, LogFormat format) throws IOException {
+        File cacheFile = cacheFileFor(logFile);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            if (header.getLong() != logFile.length() || header.getLong() != logFile.lastModified()
+                    || header.getLong() != format.fingerprint()) {
+                return null;
+            }
+            long lineCount = header.getLong();
+            boolean messagesComplete = header.get() != 0;
+            long flagsLength = header.getLong();
+            long timesLength = header.getLong();
+            long messagesLength = header.getLong();
+            int dictionarySize = header.getInt();
+            if (flagsLength > Integer.MAX_VALUE || timesLength > Integer.MAX_VALUE
+                    || messagesLength > Integer.MAX_VALUE) {
+                return null; // Columns beyond a single mapping are not supported
+            }
+
+            long position = HEADER_SIZE;
+            MappedByteBuffer flags = channel.map(FileChannel.MapMode.READ_ONLY, position, flagsLength);
+            position += flagsLength;
+            MappedByteBuffer times = channel.map(FileChannel.MapMode.READ_ONLY, position, timesLength);
+            position += timesLength;
+            MappedByteBuffer messages = channel.map(FileChannel.MapMode.READ_ONLY, position, messagesLength);
+            position += messagesLength;
+
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    channel.size() - position);
+
+            return new LogCache(lineCount, messagesComplete, flags, times, messages, entries, dictionarySize, null);
+        }
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Rough memory held once the columns are paged in: their bytes plus the dictionary strings
+     */
+    public long memoryBytes() {
+        long bytes = (long) flags.capacity() + times.capacity() + messages.capacity();
+        if (dictionaryEntries != null) {
+            // Each entry's length prefix turns into a string header of about 48 bytes
+            return bytes + dictionaryEntries.capacity() + 44L * dictionarySize;
+        }
+        for (String message : dictionary) {
+            bytes += 48 + message.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * The message dictionary, decoded from the cache file on first use
+     */
+    private synchronized String[] dictionary() {
+        if (dictionary == null) {
+            ByteBuffer entries = dictionaryEntries.duplicate();
+            String[] decoded = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                byte[] bytes = new byte[entries.getInt()];
+                entries.get(bytes);
+                decoded[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            dictionary = decoded;
+        }
+        return dictionary;
+    }
+
+    /**
+     * True if feed() gives the aggregator exactly what a scan would
+     */
+    public boolean canFeed(LogFilter filter, LineSink aggregator) {
+        return !filter.hasTextFilter() && !aggregator.needsText()
+                && (messagesComplete || !aggregator.needsMessage());
+    }
+
+    /**
+     * Feed every cached line that passes the filter to the aggregator
+     *
+     * @return the number of lines read
+     */
+    public long feed(LogFilter filter, LineSink aggregator) {
+        ByteBuffer flagColumn = flags.duplicate();
+        ByteBuffer timeColumn = times.duplicate();
+        ByteBuffer messageColumn = messages.duplicate();
+        String[] texts = aggregator.needsMessage() ? dictionary() : null;
+        ParsedLine line = new ParsedLine();
+        long epochSecond = 0;
+
+        for (long lineNumber = 1; lineNumber <= lineCount; lineNumber++) {
+            int flag = flagColumn.get();
+            boolean hasDate = (flag & HAS_DATE) != 0;
+            if (hasDate) {
+                epochSecond += zigZagDecode(readVarLong(timeColumn));
+            }
+            int messageId = (int) readVarLong(messageColumn);
+
+            int level = flag & LEVEL_MASK;
+            line.setCached(hasDate, (flag & HAS_TIME) != 0, hasDate ? epochSecond : 0,
+                    level == 0 ? null : LEVELS[level - 1],
+                    texts != null && messageId > 0 ? texts[messageId - 1] : null);
+            if (filter.matches(line)) {
+                aggregator.accept(line, lineNumber);
+            }
+        }
+        return lineCount;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Streams the columns of the lines it accepts, in order; fed by a sequential scan
+     */
+    private static final class Builder implements LineSink, AutoCloseable {
+
+        private final DataOutputStream flagsOut;
+        private final DataOutputStream timesOut;
+        private final DataOutputStream messagesOut;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private boolean messagesComplete = true;
+        private long lineCount;
+        private long previousSecond;
+
+        Builder(OutputStream flags, OutputStream times, OutputStream messages) {
+            flagsOut = buffered(flags);
+            timesOut = buffered(times);
+            messagesOut = buffered(messages);
+        }
+
+        private static DataOutputStream buffered(OutputStream out) {
+            return new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void accept(ParsedLine line, long lineNumber) {
+            try {
+                int flag = line.level() != null ? line.level().ordinal() + 1 : 0;
+                if (line.hasDate()) {
+                    flag |= HAS_DATE;
+                    long delta = line.epochSecond() - previousSecond;
+                    writeVarLong(timesOut, (delta << 1) ^ (delta >> 63));
+                    previousSecond = line.epochSecond();
+                }
+                if (line.hasTime()) {
+                    flag |= HAS_TIME;
+                }
+                flagsOut.write(flag);
+                writeVarLong(messagesOut, messageId(line.message()));
+                lineCount++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int messageId(String message) {
+            if (message == null || !messagesComplete) {
+                return 0;
+            }
+            Integer id = ids.get(message);
+            if (id == null) {
+                if (dictionary.size() >= MAX_DICTIONARY_SIZE) {
+                    // Too many distinct messages to be worth caching
+                    messagesComplete = false;
+                    ids.clear();
+                    return 0;
+                }
+                dictionary.add(message);
+                id = dictionary.size();
+                ids.put(message, id);
+            }
+            return id;
+        }
+
+        private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flagsOut.close();
+            timesOut.close();
+            messagesOut.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.woo.loganalyzer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Steps through the lines of one file that pass a filter, in file order.
+ * The file is mapped a window at a time (or, if gzip-compressed, inflated
+ * a chunk at a time), so only the current window is held regardless of
+ * file size. Lines without a timestamp take the
+ * timestamp of the closest dated line before them, keeping continuation
+ * lines such as stack traces next to their entry when files are merged.
+ */
+public class LogCursor implements Closeable {
+
+    // Same bound as a single LogScanner range
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final File file;
+    private final LogFilter filter;
+    private final FileChannel channel;
+    private final long size;
+
+    // Set instead of mapping windows when the file is compressed
+    private BackgroundChunkReader chunks;
+
+    private final LogLineParser parser;
+    private final ParsedLine line = new ParsedLine();
+    private MappedLineReader reader;
+    private long position;
+    private long lineNumber;
+    private long timestamp = Long.MIN_VALUE;
+
+    public LogCursor(File file, LogFilter filter) throws IOException {
+        this(file, filter, LogFormat.DEFAULT);
+    }
+
+    public LogCursor(File file, LogFilter filter, LogFormat format) throws IOException {
+        this.file = file;
+        this.filter = filter;
+        this.parser = format.newParser();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        if (Compression.detect(file) == Compression.GZIP) {
+            chunks = new GzipScanner(file, 1, format).open();
+        }
+    }
+
+    /**
+     * Advance to the next matching line
+     *
+     * @return false once the file is exhausted
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (reader == null || !reader.next()) {
+                if (!mapNextWindow()) {
+                    return false;
+                }
+                continue;
+            }
+
+            lineNumber++;
+            parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), line);
+            if (line.hasDate()) {
+                timestamp = line.epochSecond();
+            }
+            if (filter.matches(line)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean mapNextWindow() throws IOException {
+        if (chunks != null) {
+            ByteBuffer chunk = chunks.next();
+            if (chunk == null) {
+                return false;
+            }
+            line.bufferOffset = position;
+            reader = new MappedLineReader(chunk);
+            position += chunk.limit();
+            return true;
+        }
+        if (position >= size) {
+            return false;
+        }
+
+        long length = Math.min(WINDOW_SIZE, size - position);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = (int) length;
+        if (position + length < size) {
+            // Stop after the last complete line; the rest starts the next window
+            int lastNewline = end - 1;
+            while (lastNewline >= 0 && window.get(lastNewline) != '\n') {
+                lastNewline--;
+            }
+            if (lastNewline >= 0) {
+                end = lastNewline + 1;
+            }
+        }
+        window.limit(end);
+
+        line.bufferOffset = position;
+        reader = new MappedLineReader(window);
+        position += end;
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The current line; only valid until the next call to next()
+     */
+    public ParsedLine line() {
+        return line;
+    }
+
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Timestamp of the current line, or of the last dated line before it
+     * (Long.MIN_VALUE if there was none)
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chunks != null) {
+            chunks.close();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,217 @@
+package com.woo.loganalyzer;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precompiled line filter built once from the command-line options.
+ * Checks run cheapest-first on a {@link ParsedLine}: date, level, then
+ * the text patterns. The date and level checks compare parsed fields.
+ * Search terms, regexes and a patterns file each form a
+ * {@link PatternSet}; a line must match at least one pattern of every
+ * group given.
+ */
+public class LogFilter {
+
+    // Results of check(); pattern group i is reported as TEXT + i
+    public static final int MATCH = -1;
+    public static final int DATE = 0;
+    public static final int LEVEL = 1;
+    public static final int TEXT = 2;
+
+    // Inclusive bounds in epoch seconds
+    private final Long fromSecond;
+    private final Long toSecond;
+    private final LogLevel level;
+    private final List<PatternSet> patternGroups;
+    private final List<String> groupNames;
+
+    private LogFilter(Long fromSecond, Long toSecond, LogLevel level, List<PatternSet> patternGroups,
+                      List<String> groupNames) {
+        this.fromSecond = fromSecond;
+        this.toSecond = toSecond;
+        this.level = level;
+        this.patternGroups = patternGroups;
+        this.groupNames = groupNames;
+    }
+
+    /**
+     * Build a filter from the raw option values (any of them may be null)
+     *
+     * @throws IllegalArgumentException if a date, the level or the regex is invalid
+     */
+    public static LogFilter of(String logLevel, String searchTerm, String fromDate, String toDate,
+                               String regexPattern) {
+        return of(logLevel, searchTerm != null ? List.of(searchTerm) : null, fromDate, toDate,
+                regexPattern != null ? List.of(regexPattern) : null, null);
+    }
+
+    /**
+     * Build a filter matching any of the search terms, any of the regexes
+     * and any pattern of the file, each where given
+     *
+     * @throws IllegalArgumentException if a date, the level or a regex is invalid
+     */
+    public static LogFilter of(String logLevel, List<String> searchTerms, String fromDate, String toDate,
+                               List<String> regexPatterns, PatternSet filePatterns) {
+        LogLevel level = null;
+        if (logLevel != null) {
+            level = LogLevel.fromName(logLevel);
+            if (level == null) {
+                throw new IllegalArgumentException("Unknown log level - " + logLevel);
+            }
+        }
+
+        List<PatternSet> groups = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        if (searchTerms != null && !searchTerms.isEmpty()) {
+            groups.add(PatternSet.of(searchTerms, List.of()));
+            names.add("search");
+        }
+        if (regexPatterns != null && !regexPatterns.isEmpty()) {
+            groups.add(PatternSet.of(List.of(), regexPatterns));
+            names.add("regex");
+        }
+        if (filePatterns != null) {
+            groups.add(filePatterns);
+            names.add("patterns file");
+        }
+
+        return new LogFilter(
+                parseBound(fromDate, false),
+                parseBound(toDate, true),
+                level,
+                groups,
+                names);
+    }
+
+    /**
+     * Parse "YYYY-MM-DD" or "YYYY-MM-DD HH:mm[:ss]" into epoch seconds.
+     * A plain date used as an upper bound covers the whole day.
+     */
+    private static Long parseBound(String value, boolean upper) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value.length() > 10) {
+                LocalDateTime time = LocalDateTime.parse(value.replace(' ', 'T'));
+                return time.toEpochSecond(ZoneOffset.UTC);
+            }
+            long day = LocalDate.parse(value).toEpochDay() + (upper ? 1 : 0);
+            return day * ParsedLine.SECONDS_PER_DAY - (upper ? 1 : 0);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format - " + value
+                    + " (expected YYYY-MM-DD or YYYY-MM-DD HH:mm[:ss])");
+        }
+    }
+
+    public boolean matches(ParsedLine line) {
+        return check(line) == MATCH;
+    }
+
+    /**
+     * MATCH, or the first check that rejects the line: DATE, LEVEL or TEXT plus the pattern group's index
+     */
+    public int check(ParsedLine line) {
+        if (fromSecond != null || toSecond != null) {
+            if (!line.hasDate()) {
+                return DATE;
+            }
+            long second = line.epochSecond();
+            if (fromSecond != null && second < fromSecond) {
+                return DATE;
+            }
+            if (toSecond != null && second > toSecond) {
+                return DATE;
+            }
+        }
+
+        if (level != null && line.level() != level) {
+            return LEVEL;
+        }
+
+        for (int i = 0; i < patternGroups.size(); i++) {
+            if (!patternGroups.get(i).matches(line)) {
+                return TEXT + i;
+            }
+        }
+        return MATCH;
+    }
+
+    /**
+     * Name of each check result other than MATCH, indexed by it: "date", "level", then
+     * "search", "regex" or "patterns file" for each pattern group
+     */
+    public List<String> getCheckNames() {
+        List<String> names = new ArrayList<>(List.of("date", "level"));
+        names.addAll(groupNames);
+        return names;
+    }
+
+    public boolean isEmpty() {
+        return !hasDateFilter() && level == null && !hasTextFilter();
+    }
+
+    public boolean hasDateFilter() {
+        return fromSecond != null || toSecond != null;
+    }
+
+    /**
+     * True when the filter looks at the line text (search or regex),
+     * which no precomputed index can answer
+     */
+    public boolean hasTextFilter() {
+        return !patternGroups.isEmpty();
+    }
+
+    /**
+     * False only if a block's token filter shows that none of its lines can
+     * match the text patterns
+     */
+    public boolean mayMatchTokens(TokenBloom tokens) {
+        for (PatternSet group : patternGroups) {
+            if (!group.mayMatch(tokens)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<PatternSet> getPatternGroups() {
+        return patternGroups;
+    }
+
+    /**
+     * Number of patterns over all groups
+     */
+    public int getPatternCount() {
+        int count = 0;
+        for (PatternSet group : patternGroups) {
+            count += group.size();
+        }
+        return count;
+    }
+
+    /**
+     * Inclusive lower bound in epoch seconds, or Long.MIN_VALUE if unbounded
+     */
+    public long getFromSecond() {
+        return fromSecond != null ? fromSecond : Long.MIN_VALUE;
+    }
+
+    /**
+     * Inclusive upper bound in epoch seconds, or Long.MAX_VALUE if unbounded
+     */
+    public long getToSecond() {
+        return toSecond != null ? toSecond : Long.MAX_VALUE;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,173 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Keeps a log file open and feeds lines to aggregators as they are appended.
+ * Only new bytes are read, so steady-state cost follows the append rate.
+ * A shrinking file is treated as truncated and re-read from the start;
+ * a file replaced under the same path (rotation) is drained and the new
+ * file is followed from its first line.
+ */
+public class LogFollower {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final LogFilter filter;
+    private final long pollMillis;
+
+    private final LogLineParser parser;
+    private final ParsedLine line = new ParsedLine();
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private long lineNumber;
+    private LineSink allLines;
+
+    public LogFollower(File logFile, LogFilter filter, long pollMillis) {
+        this(logFile, filter, LogFormat.DEFAULT, pollMillis);
+    }
+
+    public LogFollower(File logFile, LogFilter filter, LogFormat format, long pollMillis) {
+        this.path = logFile.toPath();
+        this.filter = filter;
+        this.parser = format.newParser();
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Follow the file until the thread is interrupted. Every line goes to
+     * allLines (may be null) and every matching line to each sink; onPoll
+     * runs after every read attempt so the caller can refresh its views.
+     */
+    public void follow(Runnable onPoll, LineSink allLines, LineSink... sinks)
+            throws IOException, InterruptedException {
+        this.allLines = allLines;
+        open();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean gotData = readAvailable(sinks);
+                onPoll.run();
+                if (!gotData) {
+                    checkRotation(sinks);
+                    Thread.sleep(pollMillis);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        position = 0;
+        lineNumber = 0;
+        buffer.clear();
+    }
+
+    /**
+     * Read everything appended since the last call
+     *
+     * @return true if any bytes were read
+     */
+    private boolean readAvailable(LineSink[] sinks) throws IOException {
+        if (channel.size() < position) {
+            System.err.println("Note: " + path.getFileName() + " was truncated - reading from the start");
+            position = 0;
+            lineNumber = 0;
+            buffer.clear();
+        }
+
+        boolean gotData = false;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            position += read;
+            gotData = true;
+            processCompleteLines(sinks);
+
+            if (!buffer.hasRemaining()) {
+                // One line longer than the buffer: make room for the rest of it
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        return gotData;
+    }
+
+    /**
+     * Hand every newline-terminated line in the buffer to the sinks and
+     * keep the trailing partial line for the next read
+     */
+    private void processCompleteLines(LineSink[] sinks) {
+        int filled = buffer.position();
+        int complete = filled;
+        while (complete > 0 && buffer.get(complete - 1) != '\n') {
+            complete--;
+        }
+        if (complete == 0) {
+            return;
+        }
+
+        processLines(buffer.duplicate().limit(complete), position - filled, sinks);
+
+        buffer.limit(filled).position(complete);
+        buffer.compact();
+    }
+
+    private void processLines(ByteBuffer lines, long fileOffset, LineSink[] sinks) {
+        MappedLineReader reader = new MappedLineReader(lines);
+        line.bufferOffset = fileOffset;
+
+        while (reader.next()) {
+            lineNumber++;
+            parser.parse(lines, reader.lineStart(), reader.lineEnd(), line);
+            if (allLines != null) {
+                allLines.accept(line, lineNumber);
+            }
+            if (filter.matches(line)) {
+                for (LineSink sink : sinks) {
+                    sink.accept(line, lineNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Switch to the new file once the path points somewhere else.
+     * An unterminated last line of the old file is flushed first.
+     */
+    private void checkRotation(LineSink[] sinks) throws IOException {
+        Object currentKey;
+        try {
+            currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return; // Rotated away and not recreated yet
+        }
+        if (currentKey == null || Objects.equals(currentKey, fileKey)) {
+            return;
+        }
+
+        if (buffer.position() > 0) {
+            int filled = buffer.position();
+            processLines(buffer.duplicate().flip(), position - filled, sinks);
+        }
+        channel.close();
+        System.err.println("Note: " + path.getFileName() + " was rotated - following the new file");
+        open();
+    }
+}
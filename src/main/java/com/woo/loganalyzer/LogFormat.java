@@ -0,0 +1,198 @@
+package com.woo.loganalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout of the log lines: a named preset or a user pattern, plus an
+ * optional zone that timestamps with an offset are converted to.
+ *
+ * A pattern is literal text with fields in braces, e.g.
+ * "{timestamp} [{thread}] {level} {logger} - {message}". {timestamp},
+ * {level} and {message} are extracted; any other name is a field that is
+ * skipped. A space matches any run of whitespace, and a field ends where
+ * the text following it in the pattern starts. The pattern is compiled
+ * once into a list of steps that {@link PatternLineParser} walks over the
+ * raw bytes of each line, with no regex involved.
+ */
+public final class LogFormat {
+
+    public static final LogFormat DEFAULT = new LogFormat("default", null, null);
+
+    // Preset name to pattern; null for the presets with their own parser
+    private static final Map<String, String> PRESETS = new LinkedHashMap<>();
+
+    static {
+        PRESETS.put("default", null);
+        PRESETS.put("iso8601", "{timestamp} {level} {message}");
+        PRESETS.put("logback", "{timestamp} [{thread}] {level} {logger} - {message}");
+        PRESETS.put("json", null);
+    }
+
+    // Step kinds
+    static final int LITERAL = 0;
+    static final int SPACE = 1;
+    static final int TIMESTAMP = 2;
+    static final int LEVEL = 3;
+    static final int MESSAGE = 4;
+    static final int SKIP = 5;
+
+    /**
+     * One element of a compiled pattern. Fields other than the timestamp
+     * end at the first whitespace when followed by a space, at the first
+     * occurrence of the next literal when followed by one, and at the end
+     * of the line when last.
+     *
+     * @param literal the text to match, or for a field the literal that ends it (null otherwise)
+     * @param toSpace true for a field that ends at whitespace
+     */
+    record Step(int kind, byte[] literal, boolean toSpace) {
+    }
+
+    private final String name;
+    private final Step[] steps;
+    private final ZoneId zone;
+
+    private LogFormat(String name, Step[] steps, ZoneId zone) {
+        this.name = name;
+        this.steps = steps;
+        this.zone = zone;
+    }
+
+    /**
+     * @param format   a preset name or a pattern with {fields}
+     * @param timezone zone id or offset (e.g. "UTC", "+02:00", "Europe/Berlin"), or null to keep times as written
+     * @throws IllegalArgumentException if the format or zone is invalid
+     */
+    public static LogFormat of(String format, String timezone) {
+        ZoneId zone = null;
+        if (timezone != null) {
+            try {
+                zone = ZoneId.of(timezone);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Invalid time zone: " + timezone);
+            }
+        }
+        if (format == null) {
+            format = "default";
+        }
+
+        String preset = format.toLowerCase();
+        if (preset.equals("default") && zone == null) {
+            return DEFAULT;
+        }
+        if (PRESETS.containsKey(preset)) {
+            String pattern = PRESETS.get(preset);
+            return new LogFormat(preset, pattern != null ? compile(pattern) : null, zone);
+        }
+        if (!format.contains("{")) {
+            throw new IllegalArgumentException("Unknown log format '" + format + "' (presets: "
+                    + String.join(", ", PRESETS.keySet()) + ", or a pattern with {fields})");
+        }
+        return new LogFormat(format, compile(format), zone);
+    }
+
+    private static Step[] compile(String pattern) {
+        // Split into literal text, single spaces and fields
+        List<Step> steps = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean hasField = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed '{' in format: " + pattern);
+                }
+                addLiteral(steps, literal);
+                String field = pattern.substring(i + 1, close);
+                int kind = switch (field) {
+                    case "timestamp" -> TIMESTAMP;
+                    case "level" -> LEVEL;
+                    case "message" -> MESSAGE;
+                    default -> SKIP;
+                };
+                if (!steps.isEmpty() && steps.get(steps.size() - 1).kind() > TIMESTAMP) {
+                    throw new IllegalArgumentException("Fields need text between them in format: " + pattern);
+                }
+                hasField |= kind != SKIP;
+                steps.add(new Step(kind, null, false));
+                i = close;
+            } else if (Character.isWhitespace(c)) {
+                addLiteral(steps, literal);
+                if (steps.isEmpty() || steps.get(steps.size() - 1).kind() != SPACE) {
+                    steps.add(new Step(SPACE, null, false));
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+        addLiteral(steps, literal);
+        if (!hasField) {
+            throw new IllegalArgumentException("Format has no {timestamp}, {level} or {message} field: " + pattern);
+        }
+
+        // Each field ends where the step after it starts
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            if (step.kind() > TIMESTAMP && i + 1 < steps.size()) {
+                Step next = steps.get(i + 1);
+                steps.set(i, next.kind() == SPACE
+                        ? new Step(step.kind(), null, true)
+                        : new Step(step.kind(), next.literal(), false));
+            }
+        }
+        return steps.toArray(new Step[0]);
+    }
+
+    private static void addLiteral(List<Step> steps, StringBuilder literal) {
+        if (!literal.isEmpty()) {
+            steps.add(new Step(LITERAL, literal.toString().getBytes(StandardCharsets.UTF_8), false));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * A parser for this format; parsers keep per-line state, so use one per thread
+     */
+    public LogLineParser newParser() {
+        ZoneConverter converter = zone != null ? new ZoneConverter(zone) : null;
+        if (steps != null) {
+            return new PatternLineParser(steps, converter);
+        }
+        return name.equals("json") ? new JsonLineParser(converter) : new LogLineParser();
+    }
+
+    /**
+     * 64-bit hash identifying the format and zone, stored in the index and
+     * cache so they are rebuilt when the lines are parsed differently
+     */
+    public long fingerprint() {
+        if (this == DEFAULT) {
+            return 0;
+        }
+        // FNV-1a
+        long hash = 0xCBF2_9CE4_8422_2325L;
+        String key = name + "\n" + (zone != null ? zone.getId() : "");
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100_0000_01B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Preset name, or the pattern
+     */
+    public String getName() {
+        return name;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+}
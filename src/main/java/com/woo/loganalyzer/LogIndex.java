@@ -0,0 +1,465 @@
+package com.woo.loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar index ("&lt;log&gt;.idx") splitting a log into blocks of about 1 MB.
+ * Each block stores its byte range, first line number, timestamp range
+ * and per-level line counts, so time-range and level queries can skip
+ * blocks that cannot match and level statistics can be read from the
+ * counts directly. The block starts double as line-number checkpoints
+ * for {@link LineLocator}.
+ *
+ * Optionally each block also carries a {@link TokenBloom} of its tokens,
+ * so searches for a rare term only read the blocks that may contain it.
+ *
+ * The index records the size and modification time of the log it was
+ * built from, and the log format, and is ignored once any of them changes.
+ * Rebuilding after the log has grown by appends keeps the blocks before
+ * the last one and only reads from there on; a checksum of the bytes just
+ * before the old end confirms that the indexed part is unchanged.
+ */
+public class LogIndex {
+
+    static final long BLOCK_SIZE = 1024 * 1024;
+
+    private static final int MAGIC = 0x4C41_4958; // "LAIX"
+    private static final int VERSION = 3;
+    private static final int LEVEL_COUNT = LogLevel.values().length;
+
+    // Bytes before the end of the indexed part that must be unchanged to extend the index
+    private static final int TAIL_SIZE = 4096;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final long formatFingerprint;
+    private final boolean hasTokens;
+    private final long tailChecksum;
+    private final List<Block> blocks;
+    private int reusedBlocks;
+
+    private LogIndex(long fileSize, long lastModified, long formatFingerprint, boolean hasTokens,
+                     long tailChecksum, List<Block> blocks) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.formatFingerprint = formatFingerprint;
+        this.hasTokens = hasTokens;
+        this.tailChecksum = tailChecksum;
+        this.blocks = blocks;
+    }
+
+    public static File indexFileFor(File logFile) {
+        return new File(logFile.getPath() + ".idx");
+    }
+
+    /**
+     * Scan the whole log and write its index next to it
+     */
+    public static LogIndex build(File logFile, LogScanner scanner) throws IOException {
+        return build(logFile, scanner, false);
+    }
+
+    /**
+     * Index the log and write the index next to it. If the existing index
+     * covers an earlier state of the same log (same format and options,
+     * content only appended since), its blocks are kept and the log is
+     * only read from the start of its last block.
+     *
+     * @param withTokens also store a token filter per block
+     */
+    public static LogIndex build(File logFile, LogScanner scanner, boolean withTokens) throws IOException {
+        LogIndex index = index(logFile, scanner, withTokens, read(indexFileFor(logFile)));
+        index.write(indexFileFor(logFile));
+        return index;
+    }
+
+    /**
+     * Index the log with token filters without writing the index file, for
+     * {@link ServerCache}. Like {@link #build}, the blocks of the previous
+     * index (or else of the index file) are kept if the log has only grown.
+     */
+    static LogIndex buildInMemory(File logFile, LogScanner scanner, LogIndex previous) throws IOException {
+        return index(logFile, scanner, true, previous != null ? previous : read(indexFileFor(logFile)));
+    }
+
+    private static LogIndex index(File logFile, LogScanner scanner, boolean withTokens, LogIndex previous)
+            throws IOException {
+        long lastModified = logFile.lastModified();
+        long size = logFile.length();
+        long fingerprint = scanner.getFormat().fingerprint();
+
+        Builder builder = new Builder(withTokens);
+        long resumeOffset = 0;
+        long resumeLine = 0;
+        if (previous != null && previous.canExtend(logFile, size, fingerprint, withTokens)) {
+            // The last block may have ended mid-line or grown; index it again
+            List<Block> kept = previous.blocks.subList(0, previous.blocks.size() - 1);
+            Block last = previous.blocks.get(previous.blocks.size() - 1);
+            builder.resume(kept);
+            resumeOffset = last.start;
+            resumeLine = last.firstLine;
+        }
+        scanner.scanFrom(resumeOffset, resumeLine, LogFilter.of(null, null, null, null, null), builder,
+                () -> new Builder(withTokens));
+
+        LogIndex index = new LogIndex(size, lastModified, fingerprint, withTokens,
+                tailChecksum(logFile, size), builder.finish(size));
+        index.reusedBlocks = builder.resumedBlocks;
+        return index;
+    }
+
+    /**
+     * True if the log still starts with the content this index was built from
+     */
+    private boolean canExtend(File logFile, long size, long fingerprint, boolean withTokens) throws IOException {
+        return !blocks.isEmpty() && formatFingerprint == fingerprint && hasTokens == withTokens
+                && fileSize <= size && tailChecksum(logFile, fileSize) == tailChecksum;
+    }
+
+    /**
+     * CRC-32 of the TAIL_SIZE bytes before end
+     */
+    private static long tailChecksum(File logFile, long end) throws IOException {
+        byte[] tail = new byte[(int) Math.min(TAIL_SIZE, end)];
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            file.seek(end - tail.length);
+            file.readFully(tail);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(tail);
+        return crc.getValue();
+    }
+
+    /**
+     * Load the index for a log file
+     *
+     * @return the index, or null if there is none or it no longer matches the file
+     */
+    public static LogIndex load(File logFile) throws IOException {
+        return load(logFile, LogFormat.DEFAULT);
+    }
+
+    /**
+     * Load the index for a log file read with the given format
+     *
+     * @return the index, or null if there is none or it no longer matches the file or format
+     */
+    public static LogIndex load(File logFile, LogFormat format) throws IOException {
+        LogIndex index = read(indexFileFor(logFile));
+        if (index == null || index.fileSize != logFile.length() || index.lastModified != logFile.lastModified()
+                || index.formatFingerprint != format.fingerprint()) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Read an index file without checking it against its log
+     *
+     * @return the index, or null if there is none or it was written by another version
+     */
+    private static LogIndex read(File indexFile) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            long formatFingerprint = in.readLong();
+            boolean hasTokens = in.readBoolean();
+            long tailChecksum = in.readLong();
+
+            int blockCount = in.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            long start = 0;
+            for (int i = 0; i < blockCount; i++) {
+                Block block = new Block(start, in.readLong(), in.readLong());
+                block.lineCount = in.readInt();
+                block.undatedLines = in.readInt();
+                block.minEpoch = in.readLong();
+                block.maxEpoch = in.readLong();
+                for (int level = 0; level < LEVEL_COUNT; level++) {
+                    block.levelCounts[level] = in.readInt();
+                }
+                if (hasTokens) {
+                    block.tokens = TokenBloom.read(in);
+                }
+                blocks.add(block);
+                start = block.end;
+            }
+            return new LogIndex(fileSize, lastModified, formatFingerprint, hasTokens, tailChecksum, blocks);
+        }
+    }
+
+    private void write(File indexFile) throws IOException {
+        // Write to a temporary file first so a reader never sees half an index
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(formatFingerprint);
+            out.writeBoolean(hasTokens);
+            out.writeLong(tailChecksum);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeLong(block.end);
+                out.writeLong(block.firstLine);
+                out.writeInt(block.lineCount);
+                out.writeInt(block.undatedLines);
+                out.writeLong(block.minEpoch);
+                out.writeLong(block.maxEpoch);
+                for (int count : block.levelCounts) {
+                    out.writeInt(count);
+                }
+                if (hasTokens) {
+                    block.tokens.write(out);
+                }
+            }
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * True when the blocks carry token filters
+     */
+    public boolean hasTokens() {
+        return hasTokens;
+    }
+
+    /**
+     * Number of blocks kept from the previous index when it was extended by build
+     */
+    public int getReusedBlocks() {
+        return reusedBlocks;
+    }
+
+    /**
+     * The block holding a 1-based line number: its start offset and
+     * firstLine are the closest checkpoint at or before that line
+     *
+     * @return the block, or null if the line is past the indexed lines
+     */
+    public Block blockForLine(long lineNumber) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (lineNumber <= block.firstLine) {
+                high = mid - 1;
+            } else if (lineNumber > block.firstLine + block.lineCount) {
+                low = mid + 1;
+            } else {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rough heap size of the blocks and their token filters
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Block block : blocks) {
+            bytes += 96 + (block.tokens != null ? block.tokens.sizeBytes() : 0);
+        }
+        return bytes;
+    }
+
+    public long getTotalLines() {
+        return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).firstLine
+                + blocks.get(blocks.size() - 1).lineCount;
+    }
+
+    /**
+     * One indexed block: [start, end) of the file, starting at a line boundary
+     */
+    public static class Block {
+
+        private final long start;
+        private long end;
+        private final long firstLine;
+        private int lineCount;
+        private int undatedLines;
+        private long minEpoch = Long.MAX_VALUE;
+        private long maxEpoch = Long.MIN_VALUE;
+        private final int[] levelCounts = new int[LEVEL_COUNT];
+        private TokenBloom tokens;
+
+        Block(long start, long end, long firstLine) {
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+
+        public long start() {
+            return start;
+        }
+
+        public long end() {
+            return end;
+        }
+
+        /**
+         * Number of lines in the file before this block
+         */
+        public long firstLine() {
+            return firstLine;
+        }
+
+        public int lineCount() {
+            return lineCount;
+        }
+
+        public int levelCount(LogLevel level) {
+            return levelCounts[level.ordinal()];
+        }
+
+        /**
+         * False only if no line in the block can pass the date and level
+         * checks, or the text patterns when the block has a token filter
+         */
+        public boolean mayMatch(LogFilter filter) {
+            if (filter.hasDateFilter()) {
+                if (maxEpoch < filter.getFromSecond() || minEpoch > filter.getToSecond()) {
+                    return false; // Also true for blocks without any dated line
+                }
+            }
+            if (filter.getLevel() != null && levelCounts[filter.getLevel().ordinal()] == 0) {
+                return false;
+            }
+            return tokens == null || !filter.hasTextFilter() || filter.mayMatchTokens(tokens);
+        }
+
+        /**
+         * True if every line with the filter's level passes the filter,
+         * so the stored counts are exact for this block
+         */
+        public boolean fullyMatches(LogFilter filter) {
+            if (filter.hasTextFilter()) {
+                return false;
+            }
+            return !filter.hasDateFilter() || (undatedLines == 0
+                    && minEpoch >= filter.getFromSecond() && maxEpoch <= filter.getToSecond());
+        }
+    }
+
+    /**
+     * Collects blocks while the log is scanned without a filter
+     */
+    static class Builder implements LineAggregator<Builder> {
+
+        private final boolean withTokens;
+        private final List<Block> blocks = new ArrayList<>();
+        private Block current;
+        private TokenBloom.Builder currentTokens;
+        private int resumedBlocks;
+
+        Builder(boolean withTokens) {
+            this.withTokens = withTokens;
+        }
+
+        /**
+         * Start from the complete blocks of an earlier index. They are shared
+         * with it and may be in use by other queries, so they are never extended
+         * or changed: the next line accepted opens a new block.
+         */
+        void resume(List<Block> kept) {
+            blocks.addAll(kept);
+            current = null;
+            resumedBlocks = kept.size();
+        }
+
+        @Override
+        public void accept(ParsedLine line, long lineNumber) {
+            long offset = line.fileOffset();
+            if (current == null || offset - current.start >= BLOCK_SIZE) {
+                if (current != null) {
+                    current.end = offset;
+                }
+                finishTokens();
+                current = new Block(offset, -1, lineNumber - 1);
+                blocks.add(current);
+                currentTokens = withTokens ? new TokenBloom.Builder() : null;
+            }
+            if (currentTokens != null) {
+                currentTokens.addTokens(line.buffer(), line.start(), line.end());
+            }
+
+            current.lineCount++;
+            if (line.hasDate()) {
+                current.minEpoch = Math.min(current.minEpoch, line.epochSecond());
+                current.maxEpoch = Math.max(current.maxEpoch, line.epochSecond());
+            } else {
+                current.undatedLines++;
+            }
+            if (line.level() != null) {
+                current.levelCounts[line.level().ordinal()]++;
+            }
+        }
+
+        private void finishTokens() {
+            if (currentTokens != null) {
+                current.tokens = currentTokens.build();
+                currentTokens = null;
+            }
+        }
+
+        @Override
+        public void merge(Builder next, long lineOffset) {
+            finishTokens();
+            next.finishTokens();
+            for (Block block : next.blocks) {
+                if (current != null) {
+                    current.end = block.start;
+                }
+                Block moved = new Block(block.start, block.end, block.firstLine + lineOffset);
+                moved.lineCount = block.lineCount;
+                moved.undatedLines = block.undatedLines;
+                moved.minEpoch = block.minEpoch;
+                moved.maxEpoch = block.maxEpoch;
+                System.arraycopy(block.levelCounts, 0, moved.levelCounts, 0, LEVEL_COUNT);
+                moved.tokens = block.tokens;
+                blocks.add(moved);
+                current = moved;
+            }
+        }
+
+        List<Block> finish(long fileSize) {
+            finishTokens();
+            if (current != null) {
+                current.end = fileSize;
+            }
+            return blocks;
+        }
+    }
+}
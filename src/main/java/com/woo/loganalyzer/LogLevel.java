@@ -0,0 +1,88 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Log levels recognised in the level field of a line
+ */
+public enum LogLevel {
+    ERROR, WARN, INFO, DEBUG, TRACE, FATAL;
+
+    private static final LogLevel[] VALUES = values();
+    private static final byte[] WARNING = "WARNING".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] bytes = name().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Look up a level by name, ignoring case
+     *
+     * @return the level, or null if the name is not a known level
+     */
+    public static LogLevel fromName(String name) {
+        for (LogLevel level : VALUES) {
+            if (level.name().equalsIgnoreCase(name)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Match the bytes in [start, end) against the level names exactly
+     *
+     * @return the level, or null if the token is not a level
+     */
+    static LogLevel fromBytes(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        for (LogLevel level : VALUES) {
+            if (level.bytes.length == length && buffer.get(start) == level.bytes[0]
+                    && matches(buffer, start, level.bytes)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Match the bytes in [start, end) against the level names ignoring
+     * case, also accepting WARNING for WARN
+     *
+     * @return the level, or null if the token is not a level
+     */
+    static LogLevel fromBytesIgnoreCase(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length == 7 && equalsIgnoreCase(buffer, start, WARNING)) {
+            return WARN;
+        }
+        for (LogLevel level : VALUES) {
+            if (level.bytes.length == length && equalsIgnoreCase(buffer, start, level.bytes)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    // name is upper case ASCII
+    private static boolean equalsIgnoreCase(ByteBuffer buffer, int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            int b = buffer.get(start + i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, byte[] name) {
+        for (int i = 1; i < name.length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tokenizes "yyyy-MM-dd HH:mm:ss LEVEL message" lines in a single pass
+ * over the raw bytes. The result is written into a reusable
+ * {@link ParsedLine}, so parsing does not allocate.
+ *
+ * The level is only taken from the field after the timestamp (or from
+ * the first token when there is no timestamp); a level name appearing
+ * inside the message text is not a match.
+ *
+ * This is the parser for the default format. Other formats
+ * ({@link PatternLineParser}, {@link JsonLineParser}) are created by
+ * {@link LogFormat} and share the timestamp parsing here.
+ */
+public class LogLineParser {
+
+    private static final int DATE_LENGTH = 10;
+    private static final int TIMESTAMP_LENGTH = 19;
+    // " HH:mm:ss" or "THH:mm:ss"
+    private static final int TIME_LENGTH = 9;
+
+    public void parse(ByteBuffer buffer, int start, int end, ParsedLine line) {
+        line.reset(buffer, start, end);
+
+        int position = start;
+        if (end - start >= DATE_LENGTH && parseDate(buffer, start, line)) {
+            position = start + DATE_LENGTH;
+            if (end - start >= TIMESTAMP_LENGTH && buffer.get(position) == ' '
+                    && parseTime(buffer, position + 1, line)) {
+                position = start + TIMESTAMP_LENGTH;
+            }
+        }
+
+        // Level field: the next whitespace-separated token
+        position = skipWhitespace(buffer, position, end);
+        int tokenEnd = position;
+        while (tokenEnd < end && !isWhitespace(buffer.get(tokenEnd))) {
+            tokenEnd++;
+        }
+        line.level = LogLevel.fromBytes(buffer, position, tokenEnd);
+
+        // Message: everything after the level, if anything follows it
+        if (line.level != null && tokenEnd < end) {
+            line.messageStart = skipWhitespace(buffer, tokenEnd, end);
+        }
+    }
+
+    /**
+     * Parse an ISO 8601 style timestamp starting at position: yyyy-MM-dd,
+     * optionally followed by 'T' or ' ' and HH:mm:ss, a fraction of a
+     * second and a zone ('Z', +HH:mm, +HHmm or +HH). Times with a zone are
+     * converted to the local time of zone when one is given, otherwise
+     * they are kept as written.
+     *
+     * @return the end of the timestamp, or -1 if there is no valid date at position
+     */
+    static int parseTimestamp(ByteBuffer buffer, int position, int end, ParsedLine line, ZoneConverter zone) {
+        if (end - position < DATE_LENGTH || !parseDate(buffer, position, line)) {
+            return -1;
+        }
+        position += DATE_LENGTH;
+        if (end - position < TIME_LENGTH || (buffer.get(position) != 'T' && buffer.get(position) != ' ')
+                || !parseTime(buffer, position + 1, line)) {
+            return position;
+        }
+        position += TIME_LENGTH;
+
+        // Fraction of a second, dropped
+        if (position < end && (buffer.get(position) == '.' || buffer.get(position) == ',')) {
+            int fractionEnd = position + 1;
+            while (fractionEnd < end && isDigit(buffer.get(fractionEnd))) {
+                fractionEnd++;
+            }
+            if (fractionEnd > position + 1) {
+                position = fractionEnd;
+            }
+        }
+
+        if (position >= end) {
+            return position;
+        }
+        byte b = buffer.get(position);
+        int offsetSeconds;
+        if (b == 'Z') {
+            offsetSeconds = 0;
+            position++;
+        } else if ((b == '+' || b == '-') && end - position >= 3 && digits(buffer, position + 1, 2) >= 0) {
+            int hours = digits(buffer, position + 1, 2);
+            int minutes = 0;
+            int offsetEnd = position + 3;
+            if (end - offsetEnd >= 3 && buffer.get(offsetEnd) == ':' && digits(buffer, offsetEnd + 1, 2) >= 0) {
+                minutes = digits(buffer, offsetEnd + 1, 2);
+                offsetEnd += 3;
+            } else if (end - offsetEnd >= 2 && digits(buffer, offsetEnd, 2) >= 0) {
+                minutes = digits(buffer, offsetEnd, 2);
+                offsetEnd += 2;
+            }
+            offsetSeconds = (b == '-' ? -1 : 1) * (hours * 3600 + minutes * 60);
+            position = offsetEnd;
+        } else {
+            return position;
+        }
+
+        if (zone != null) {
+            line.epochSecond = zone.toLocal(line.epochSecond - offsetSeconds);
+        }
+        return position;
+    }
+
+    private static boolean parseDate(ByteBuffer buffer, int start, ParsedLine line) {
+        if (buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+            return false;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return false;
+        }
+
+        line.hasDate = true;
+        line.epochSecond = epochDay(year, month, day) * ParsedLine.SECONDS_PER_DAY;
+        return true;
+    }
+
+    private static boolean parseTime(ByteBuffer buffer, int start, ParsedLine line) {
+        if (buffer.get(start + 2) != ':' || buffer.get(start + 5) != ':') {
+            return false;
+        }
+        int hour = digits(buffer, start, 2);
+        int minute = digits(buffer, start + 3, 2);
+        int second = digits(buffer, start + 6, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return false;
+        }
+
+        line.hasTime = true;
+        line.epochSecond += hour * ParsedLine.SECONDS_PER_HOUR + minute * 60L + second;
+        return true;
+    }
+
+    /**
+     * Parse a fixed-width decimal field
+     *
+     * @return the value, or -1 if any byte is not a digit
+     */
+    static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buffer.get(start + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    static int skipWhitespace(ByteBuffer buffer, int position, int end) {
+        while (position < end && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    // Same set of characters String.trim() removes
+    static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+}
@@ -0,0 +1,75 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Expands the command-line paths into log files.
+ * A path may be a file, a directory (its regular files, without
+ * sidecar files) or a glob in the last path segment such as
+ * "logs/app.log*". Quoted globs reach this class unexpanded.
+ */
+public final class LogPaths {
+
+    private LogPaths() {
+    }
+
+    /**
+     * @return the files in argument order, each directory and glob sorted by name, without duplicates
+     * @throws IllegalArgumentException if a path does not exist or a pattern matches nothing
+     */
+    public static List<File> resolve(List<String> paths) throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isFile()) {
+                files.add(file);
+            } else if (file.isDirectory()) {
+                files.addAll(list(file.toPath(), "*"));
+            } else if (isGlob(file.getName())) {
+                File parent = file.getParentFile() != null ? file.getParentFile() : new File(".");
+                List<File> matches = parent.isDirectory() ? list(parent.toPath(), file.getName()) : List.of();
+                if (matches.isEmpty()) {
+                    throw new IllegalArgumentException("No files match - " + path);
+                }
+                files.addAll(matches);
+            } else if (file.exists()) {
+                throw new IllegalArgumentException("Path is not a file - " + path);
+            } else {
+                throw new IllegalArgumentException("File not found - " + path);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static List<File> list(Path directory, String glob) throws IOException {
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path entry : stream) {
+                String name = entry.getFileName().toString();
+                if (Files.isRegularFile(entry) && !name.startsWith(".") && !isSidecar(name)) {
+                    files.add(directory.equals(Paths.get(".")) ? new File(name) : entry.toFile());
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+
+    // Index and column cache files and half-written temporaries kept next to the logs
+    private static boolean isSidecar(String name) {
+        return name.endsWith(".idx") || name.endsWith(".cache") || name.endsWith(".tmp");
+    }
+}
@@ -0,0 +1,489 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Scans a log file in byte ranges aligned on newlines.
+ * Each range is memory-mapped and every line is tokenized in place by
+ * {@link LogLineParser}; text is only decoded where a filter or
+ * aggregator asks for it. With more than one thread the ranges are
+ * processed on a fork-join pool and the partial aggregates are merged
+ * back in file order.
+ *
+ * When a valid {@link LogIndex} is attached, only the blocks that can
+ * match the filter are read. When a valid {@link LogCache} is attached
+ * and the aggregator only needs parsed fields, the file is not read at
+ * all. Gzip-compressed files are handed to {@link GzipScanner}.
+ * With {@link RunMetrics} attached, mapped ranges are scanned by a
+ * separate, timed loop; the plain loop is left untouched.
+ */
+public class LogScanner {
+
+    // Ranges smaller than this are not worth handing to another thread
+    private static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    // A single mapping is limited to 2 GB; stay well below it
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+    // Bytes read at each end of the file to find its first and last timestamps
+    private static final int PROBE_SIZE = 64 * 1024;
+
+    private final File logFile;
+    private final int threads;
+    private final LogFormat format;
+    private LogIndex index;
+    private LogCache cache;
+    private RunMetrics metrics;
+    private Compression compression;
+
+    public LogScanner(File logFile, int threads) {
+        this(logFile, threads, LogFormat.DEFAULT);
+    }
+
+    public LogScanner(File logFile, int threads, LogFormat format) {
+        this.logFile = logFile;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.format = format;
+    }
+
+    /**
+     * Use a block index to skip ranges that cannot match
+     */
+    public void useIndex(LogIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Answer scans from cached columns where the filter and aggregator allow it
+     */
+    public void useCache(LogCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Record read, parse, filter and aggregate times of later scans
+     */
+    public void useMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The attached index, or null
+     */
+    public LogIndex getIndex() {
+        return index;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public LogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Compression of the file, detected from its first bytes
+     */
+    public Compression getCompression() throws IOException {
+        if (compression == null) {
+            compression = Compression.detect(logFile);
+        }
+        return compression;
+    }
+
+    /**
+     * Check whether the file can hold lines inside the filter's date window,
+     * assuming its lines are in time order. Uses the index when attached;
+     * otherwise only the first and last dated lines are read.
+     *
+     * @return false if the whole file is known to fall outside the window
+     */
+    public boolean mayMatchDates(LogFilter filter) throws IOException {
+        if (!filter.hasDateFilter() || getCompression() != Compression.NONE) {
+            return true;
+        }
+        if (index != null) {
+            for (LogIndex.Block block : index.getBlocks()) {
+                if (block.mayMatch(filter)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long first = probeTimestamp(channel, 0, Math.min(size, PROBE_SIZE), true);
+            long last = probeTimestamp(channel, Math.max(0, size - PROBE_SIZE), size, false);
+            if (first == Long.MIN_VALUE || last == Long.MIN_VALUE) {
+                return true; // No dated line near an end; cannot tell
+            }
+            return last >= filter.getFromSecond() && first <= filter.getToSecond();
+        }
+    }
+
+    /**
+     * Timestamp of the first (or last) dated line in [start, end), or Long.MIN_VALUE
+     */
+    private long probeTimestamp(FileChannel channel, long start, long end, boolean first)
+            throws IOException {
+        MappedLineReader reader = new MappedLineReader(map(channel, new Range(start, end, -1)));
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        long found = Long.MIN_VALUE;
+
+        boolean skipPartial = start > 0;
+        while (reader.next()) {
+            if (skipPartial) {
+                skipPartial = false; // Started mid-line
+                continue;
+            }
+            parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), line);
+            if (line.hasDate()) {
+                found = line.epochSecond();
+                if (first) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Count all lines in the file, ignoring any filter
+     */
+    public long countLines() throws IOException {
+        if (cache != null) {
+            return cache.getLineCount();
+        }
+        if (getCompression() == Compression.GZIP) {
+            return new GzipScanner(logFile, threads, format).countLines();
+        }
+        if (index != null) {
+            return index.getTotalLines();
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long count = 0;
+            for (Range range : split(channel, 0, 0)) {
+                count += MappedLineReader.countLines(map(channel, range));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Feed every line accepted by the filter to the root aggregator.
+     * Lines from later ranges are scanned into fresh instances from the
+     * factory and merged into the root in file order.
+     *
+     * @return the number of lines read
+     */
+    public <T extends LineAggregator<T>> long scan(LogFilter filter, T root, Supplier<T> factory)
+            throws IOException {
+        if (cache != null && cache.canFeed(filter, root)) {
+            return cache.feed(filter, root);
+        }
+        if (getCompression() == Compression.GZIP) {
+            return new GzipScanner(logFile, threads, format).scan(filter, root, factory);
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            List<Range> ranges = index != null ? indexedRanges(filter, root) : split(channel, 0, 0);
+            return scanRanges(channel, ranges, filter, root, factory);
+        }
+    }
+
+    /**
+     * Feed every line accepted by the filter to the sink, in file order
+     * and on the calling thread, whatever the number of threads
+     *
+     * @return the number of lines read
+     */
+    public long scan(LogFilter filter, LineSink sink) throws IOException {
+        if (cache != null && cache.canFeed(filter, sink)) {
+            return cache.feed(filter, sink);
+        }
+        if (getCompression() == Compression.GZIP) {
+            return new GzipScanner(logFile, 1, format).scan(filter, sink);
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            List<Range> ranges = index != null ? indexedRanges(filter, sink) : split(channel, 0, 0);
+            return scanSequentially(channel, ranges, filter, sink);
+        }
+    }
+
+    /**
+     * Like {@link #scan}, but only from a line start at offset onwards,
+     * numbering lines after the linesBefore that precede it. The file must
+     * not be compressed; any index or cache is not used.
+     */
+    public <T extends LineAggregator<T>> long scanFrom(long offset, long linesBefore, LogFilter filter, T root,
+                                                       Supplier<T> factory) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            return scanRanges(channel, split(channel, offset, linesBefore), filter, root, factory);
+        }
+    }
+
+    private <T extends LineAggregator<T>> long scanRanges(FileChannel channel, List<Range> ranges, LogFilter filter,
+                                                          T root, Supplier<T> factory) throws IOException {
+        if (threads == 1 || ranges.size() <= 1) {
+            return scanSequentially(channel, ranges, filter, root);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return scanParallel(pool, channel, ranges, filter, root, factory);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // The sink sees every range with file-wide line numbers
+    private long scanSequentially(FileChannel channel, List<Range> ranges, LogFilter filter, LineSink sink) {
+        long linesRead = 0;
+        long lineBase = 0;
+        for (Range range : ranges) {
+            if (range.firstLine() >= 0) {
+                lineBase = range.firstLine();
+            }
+            long lines = scanRange(channel, range, filter, sink, lineBase);
+            lineBase += lines;
+            linesRead += lines;
+        }
+        return linesRead;
+    }
+
+    private <T extends LineAggregator<T>> long scanParallel(ForkJoinPool pool, FileChannel channel,
+                                                             List<Range> ranges, LogFilter filter,
+                                                             T root, Supplier<T> factory) throws IOException {
+        // Bound the number of finished-but-unmerged ranges held in memory
+        int window = threads * 2;
+        Deque<ForkJoinTask<Chunk<T>>> pending = new ArrayDeque<>();
+        long[] progress = new long[2]; // {lines read, line offset of the next range}
+
+        try {
+            for (Range range : ranges) {
+                if (pending.size() >= window) {
+                    mergeNext(pending.poll(), root, progress);
+                }
+                pending.add(pool.submit(() -> {
+                    T part = factory.get();
+                    return new Chunk<>(part, range, scanRange(channel, range, filter, part, 0));
+                }));
+            }
+            while (!pending.isEmpty()) {
+                mergeNext(pending.poll(), root, progress);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return progress[0];
+    }
+
+    private <T extends LineAggregator<T>> void mergeNext(ForkJoinTask<Chunk<T>> task, T root, long[] progress) {
+        Chunk<T> chunk = task.join();
+        long lineOffset = chunk.range().firstLine() >= 0 ? chunk.range().firstLine() : progress[1];
+        root.merge(chunk.part(), lineOffset);
+        progress[0] += chunk.lines();
+        progress[1] = lineOffset + chunk.lines();
+    }
+
+    private long scanRange(FileChannel channel, Range range, LogFilter filter, LineSink aggregator, long lineBase) {
+        MappedByteBuffer mapped;
+        try {
+            mapped = map(channel, range);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (metrics != null) {
+            return scanRangeMeasured(mapped, range, filter, aggregator, lineBase);
+        }
+
+        MappedLineReader reader = new MappedLineReader(mapped);
+        ByteBuffer buffer = reader.buffer();
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        line.bufferOffset = range.start();
+        long lineNumber = lineBase;
+
+        while (reader.next()) {
+            lineNumber++;
+
+            parser.parse(buffer, reader.lineStart(), reader.lineEnd(), line);
+            if (filter.matches(line)) {
+                aggregator.accept(line, lineNumber);
+            }
+        }
+
+        return lineNumber - lineBase;
+    }
+
+    /**
+     * Same as the loop of {@link #scanRange}, recording into the metrics.
+     * Reading is timed by paging the whole range in before the loop.
+     */
+    private long scanRangeMeasured(MappedByteBuffer mapped, Range range, LogFilter filter, LineSink aggregator,
+                                   long lineBase) {
+        RunMetrics.Scan scan = metrics.newScan();
+        long started = System.nanoTime();
+        mapped.load();
+        long loaded = System.nanoTime();
+
+        MappedLineReader reader = new MappedLineReader(mapped);
+        LogLineParser parser = format.newParser();
+        ParsedLine line = new ParsedLine();
+        line.bufferOffset = range.start();
+        long lineNumber = lineBase;
+        int untilSample = 0;
+
+        while (true) {
+            if (untilSample-- > 0) {
+                if (!reader.next()) {
+                    break;
+                }
+                lineNumber++;
+                parser.parse(mapped, reader.lineStart(), reader.lineEnd(), line);
+                int check = filter.check(line);
+                if (check == LogFilter.MATCH) {
+                    aggregator.accept(line, lineNumber);
+                    scan.matched++;
+                } else {
+                    scan.rejected[check]++;
+                }
+                continue;
+            }
+
+            untilSample = RunMetrics.SAMPLE_INTERVAL - 1;
+            long start = System.nanoTime();
+            if (!reader.next()) {
+                break;
+            }
+            lineNumber++;
+            parser.parse(mapped, reader.lineStart(), reader.lineEnd(), line);
+            long parsed = System.nanoTime();
+            int check = filter.check(line);
+            long filtered = System.nanoTime();
+            if (check == LogFilter.MATCH) {
+                aggregator.accept(line, lineNumber);
+                scan.matched++;
+            } else {
+                scan.rejected[check]++;
+            }
+            scan.parseSample += parsed - start;
+            scan.filterSample += filtered - parsed;
+            scan.acceptSample += System.nanoTime() - filtered;
+        }
+
+        scan.bytes = range.end() - range.start();
+        scan.lines = lineNumber - lineBase;
+        scan.readNanos = loaded - started;
+        scan.loopNanos = System.nanoTime() - loaded;
+        metrics.add(scan);
+        return scan.lines;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, Range range) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, range.start(), range.end() - range.start());
+    }
+
+    /**
+     * Turn the index blocks that may match into ranges. Blocks the root
+     * can take whole from the index counts are not read at all.
+     */
+    private List<Range> indexedRanges(LogFilter filter, LineSink root) {
+        List<Range> ranges = new ArrayList<>();
+        long chunkSize = chunkSize(index.getFileSize());
+        Range current = null;
+
+        for (LogIndex.Block block : index.getBlocks()) {
+            if (!block.mayMatch(filter) || root.acceptBlock(block, filter)) {
+                continue;
+            }
+            if (current != null && current.end() == block.start()
+                    && block.end() - current.start() <= chunkSize) {
+                current = new Range(current.start(), block.end(), current.firstLine());
+                ranges.set(ranges.size() - 1, current);
+            } else {
+                current = new Range(block.start(), block.end(), block.firstLine());
+                ranges.add(current);
+            }
+        }
+
+        return ranges;
+    }
+
+    private long chunkSize(long size) {
+        return threads == 1
+                ? MAX_CHUNK_SIZE
+                : Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / (threads * 4L)));
+    }
+
+    /**
+     * Split the file from a line start at offset into [start, end) ranges,
+     * each ending just after a newline
+     */
+    private List<Range> split(FileChannel channel, long offset, long linesBefore) throws IOException {
+        long size = channel.size();
+        List<Range> ranges = new ArrayList<>();
+
+        long chunkSize = chunkSize(size - offset);
+        if (size - offset <= chunkSize) {
+            ranges.add(new Range(offset, size, linesBefore));
+            return ranges;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long start = offset;
+        while (start < size) {
+            long end = nextLineStart(channel, buffer, Math.min(start + chunkSize, size), size);
+            ranges.add(new Range(start, end, start == offset ? linesBefore : -1));
+            start = end;
+        }
+
+        return ranges;
+    }
+
+    private long nextLineStart(FileChannel channel, ByteBuffer buffer, long position, long size)
+            throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Byte range of the file; firstLine is the number of lines before it, or -1 if not known up front
+     */
+    private record Range(long start, long end, long firstLine) {
+    }
+
+    private record Chunk<T>(T part, Range range, long lines) {
+    }
+}
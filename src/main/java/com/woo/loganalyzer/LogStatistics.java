@@ -0,0 +1,434 @@
+package com.woo.loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Level, time, date and message counts over the matching lines.
+ * Only the dimensions requested in the constructor are tracked.
+ *
+ * Counting allocates nothing per line: levels index an array, hours and
+ * days index {@link BucketCounts} and exact messages go into
+ * {@link MessageCounts} as raw bytes. The string-keyed maps returned by
+ * the getters are built when a report asks for them.
+ *
+ * The raw counts can be saved as a partial and merged with partials from
+ * other hosts: level, bucket and exact message counts simply add up, so
+ * merging is associative and partials can be combined in any grouping.
+ *
+ * All counts and totals are 64-bit, so a log or a merge of partials with
+ * more than 2^31 lines is counted without wrapping around.
+ */
+public class LogStatistics implements LineAggregator<LogStatistics> {
+
+    private final boolean trackLevels;
+    private final String timeMode;
+    private final boolean trackDates;
+    private final boolean trackMessages;
+    private final int messageCounters;
+    private final boolean messageTemplates;
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private static final int MAGIC = 0x4C41_5053; // "LAPS"
+    private static final int VERSION = 2;
+
+    private final long[] levelCounts = new long[LEVELS.length];
+    // Keyed by epoch hour or epoch day, depending on timeMode
+    private final BucketCounts timeCounts = new BucketCounts();
+    // Keyed by epoch day
+    private final BucketCounts dateCounts = new BucketCounts();
+    private final MessageCounts messageCounts = new MessageCounts();
+
+    // Replace messageCounts when message counting is approximate or by template
+    private final HeavyHitters messageSketch;
+    private final TemplateMiner templateMiner;
+
+    private long totalLogs;
+    private long levelTotal;
+    private long timeTotal;
+    private long messageTotal;
+    private long firstDay = Long.MAX_VALUE;
+    private long lastDay = Long.MIN_VALUE;
+
+    /**
+     * @param timeMode "hourly", "daily" or null to skip time buckets
+     */
+    public LogStatistics(boolean trackLevels, String timeMode, boolean trackDates, boolean trackMessages) {
+        this(trackLevels, timeMode, trackDates, trackMessages, 0, false);
+    }
+
+    /**
+     * @param timeMode         "hourly", "daily" or null to skip time buckets
+     * @param messageCounters  size of the approximate message sketch, or 0 to count every message exactly
+     * @param messageTemplates count messages by mined template instead of exact text
+     */
+    public LogStatistics(boolean trackLevels, String timeMode, boolean trackDates, boolean trackMessages,
+                         int messageCounters, boolean messageTemplates) {
+        this.trackLevels = trackLevels;
+        this.timeMode = timeMode;
+        this.trackDates = trackDates;
+        this.trackMessages = trackMessages;
+        this.messageCounters = messageCounters;
+        this.messageTemplates = messageTemplates;
+        this.messageSketch = trackMessages && messageCounters > 0 ? new HeavyHitters(messageCounters) : null;
+        this.templateMiner = trackMessages && messageTemplates ? new TemplateMiner() : null;
+    }
+
+    /**
+     * Statistics for a partial, tracking every dimension so a merge can render any report.
+     * Hourly buckets are kept; daily ones are the date counts.
+     */
+    public static LogStatistics forPartial(int messageCounters, boolean messageTemplates) {
+        return new LogStatistics(true, "hourly", true, true, messageCounters, messageTemplates);
+    }
+
+    /**
+     * Create an empty instance tracking the same dimensions
+     */
+    public LogStatistics newPartial() {
+        return new LogStatistics(trackLevels, timeMode, trackDates, trackMessages, messageCounters,
+                messageTemplates);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        totalLogs++;
+
+        if (trackLevels) {
+            LogLevel level = line.level();
+            if (level != null) {
+                levelCounts[level.ordinal()]++;
+                levelTotal++;
+            }
+        }
+
+        if (timeMode != null) {
+            if (timeMode.equals("daily") && line.hasDate()) {
+                timeCounts.add(line.epochDay());
+                timeTotal++;
+            } else if (timeMode.equals("hourly") && line.hasTime()) {
+                timeCounts.add(line.epochHour());
+                timeTotal++;
+            }
+        }
+
+        if (trackDates && line.hasDate()) {
+            long day = line.epochDay();
+            dateCounts.add(day);
+            firstDay = Math.min(firstDay, day);
+            lastDay = Math.max(lastDay, day);
+        }
+
+        if (trackMessages && line.messageStart() >= 0) {
+            if (templateMiner == null && messageSketch == null && line.isMessageInBuffer()) {
+                // Exact counts are keyed by the line bytes, so the message is never decoded
+                messageCounts.add(line.buffer(), line.messageStart(), line.messageEnd());
+                messageTotal++;
+                return;
+            }
+            String message = line.message();
+            if (message != null) {
+                if (templateMiner != null) {
+                    templateMiner.add(message);
+                } else if (messageSketch != null) {
+                    messageSketch.offer(message);
+                } else {
+                    messageCounts.add(message);
+                }
+                messageTotal++;
+            }
+        }
+    }
+
+    @Override
+    public boolean needsText() {
+        return false;
+    }
+
+    @Override
+    public boolean needsMessage() {
+        return trackMessages;
+    }
+
+    @Override
+    public boolean acceptBlock(LogIndex.Block block, LogFilter filter) {
+        // Index blocks only carry level counts
+        if (timeMode != null || trackDates || trackMessages || !block.fullyMatches(filter)) {
+            return false;
+        }
+
+        LogLevel only = filter.getLevel();
+        long levelLines = 0;
+        for (LogLevel level : LEVELS) {
+            int count = block.levelCount(level);
+            if (count > 0 && (only == null || only == level)) {
+                levelCounts[level.ordinal()] += count;
+                levelLines += count;
+            }
+        }
+        levelTotal += levelLines;
+        totalLogs += only == null ? block.lineCount() : levelLines;
+        return true;
+    }
+
+    @Override
+    public void merge(LogStatistics next, long lineOffset) {
+        for (int i = 0; i < levelCounts.length; i++) {
+            levelCounts[i] += next.levelCounts[i];
+        }
+        timeCounts.merge(next.timeCounts);
+        dateCounts.merge(next.dateCounts);
+        messageCounts.merge(next.messageCounts);
+        if (messageSketch != null) {
+            messageSketch.merge(next.messageSketch);
+        }
+        if (templateMiner != null) {
+            templateMiner.merge(next.templateMiner);
+        }
+
+        totalLogs += next.totalLogs;
+        levelTotal += next.levelTotal;
+        timeTotal += next.timeTotal;
+        messageTotal += next.messageTotal;
+        firstDay = Math.min(firstDay, next.firstDay);
+        lastDay = Math.max(lastDay, next.lastDay);
+    }
+
+    /**
+     * True when both track the same dimensions and count messages the same way
+     */
+    public boolean isMergeableWith(LogStatistics other) {
+        return trackLevels == other.trackLevels && trackDates == other.trackDates
+                && trackMessages == other.trackMessages && messageCounters == other.messageCounters
+                && messageTemplates == other.messageTemplates
+                && (timeMode == null ? other.timeMode == null : timeMode.equals(other.timeMode));
+    }
+
+    /**
+     * Save the raw counts as a partial (gzip-compressed)
+     */
+    public void save(File file) throws IOException {
+        // Write to a temporary file first so a reader never sees half a partial
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp), 1 << 16), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(trackLevels);
+            out.writeUTF(timeMode != null ? timeMode : "");
+            out.writeBoolean(trackDates);
+            out.writeBoolean(trackMessages);
+            out.writeInt(messageCounters);
+            out.writeBoolean(messageTemplates);
+
+            out.writeLong(totalLogs);
+            out.writeLong(levelTotal);
+            out.writeLong(timeTotal);
+            out.writeLong(messageTotal);
+            out.writeLong(firstDay);
+            out.writeLong(lastDay);
+            out.writeInt(levelCounts.length);
+            for (long count : levelCounts) {
+                out.writeLong(count);
+            }
+            timeCounts.write(out);
+            dateCounts.write(out);
+            if (templateMiner != null) {
+                templateMiner.write(out);
+            } else if (messageSketch != null) {
+                messageSketch.write(out);
+            } else {
+                messageCounts.write(out);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load a partial written by {@link #save}
+     *
+     * @throws IOException if the file is not a partial or cannot be read
+     */
+    public static LogStatistics load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a partial written by this version - " + file.getPath());
+            }
+            boolean trackLevels = in.readBoolean();
+            String timeMode = in.readUTF();
+            boolean trackDates = in.readBoolean();
+            boolean trackMessages = in.readBoolean();
+            int messageCounters = in.readInt();
+            boolean messageTemplates = in.readBoolean();
+            LogStatistics stats = new LogStatistics(trackLevels, timeMode.isEmpty() ? null : timeMode, trackDates,
+                    trackMessages, messageCounters, messageTemplates);
+
+            stats.totalLogs = in.readLong();
+            stats.levelTotal = in.readLong();
+            stats.timeTotal = in.readLong();
+            stats.messageTotal = in.readLong();
+            stats.firstDay = in.readLong();
+            stats.lastDay = in.readLong();
+            int levels = in.readInt();
+            if (levels != LEVELS.length) {
+                throw new IOException("Partial has " + levels + " log levels, expected " + LEVELS.length);
+            }
+            for (int i = 0; i < levels; i++) {
+                stats.levelCounts[i] = in.readLong();
+            }
+            stats.timeCounts.read(in);
+            stats.dateCounts.read(in);
+            if (stats.templateMiner != null) {
+                stats.templateMiner.read(in);
+            } else if (stats.messageSketch != null) {
+                HeavyHitters sketch = HeavyHitters.read(in);
+                stats.messageSketch.merge(sketch);
+            } else {
+                stats.messageCounts.read(in);
+            }
+            return stats;
+        } catch (ZipException e) {
+            throw new IOException("Not a partial - " + file.getPath(), e);
+        }
+    }
+
+    // Strings of any length, unlike writeUTF
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // "2024-12-09"
+    private static String dateKey(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    // Rounded to the hour: "2024-12-09 10:00"
+    private static String hourKey(long epochHour) {
+        long hour = Math.floorMod(epochHour, 24L);
+        return dateKey(Math.floorDiv(epochHour, 24L)) + (hour < 10 ? " 0" : " ") + hour + ":00";
+    }
+
+    public Map<String, Long> getLevelCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (LogLevel level : LEVELS) {
+            if (levelCounts[level.ordinal()] > 0) {
+                counts.put(level.name(), levelCounts[level.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getTimeCounts() {
+        if (timeMode == null) {
+            return new HashMap<>();
+        }
+        return timeCounts.toMap(timeMode.equals("daily") ? LogStatistics::dateKey : LogStatistics::hourKey);
+    }
+
+    public Map<String, Long> getDateCounts() {
+        return dateCounts.toMap(LogStatistics::dateKey);
+    }
+
+    public Map<String, Long> getMessageCounts() {
+        return messageCounts.toMap();
+    }
+
+    /**
+     * The n most frequent messages (or templates), highest first
+     */
+    public List<Map.Entry<String, Long>> topMessages(int n) {
+        if (templateMiner != null) {
+            return TopN.of(templateMiner.getCounts(), n);
+        }
+        return messageSketch != null ? messageSketch.top(n) : TopN.of(getMessageCounts(), n);
+    }
+
+    /**
+     * How much the count of a message returned by topMessages may be too high (0 when exact)
+     */
+    public long getMessageError(String message) {
+        return messageSketch != null ? messageSketch.error(message) : 0;
+    }
+
+    /**
+     * True when message counts come from the sketch and some messages were dropped
+     */
+    public boolean isMessageCountApproximate() {
+        return messageSketch != null && !messageSketch.isExact();
+    }
+
+    /**
+     * Number of distinct messages (or templates); a lower bound when message counts are approximate
+     */
+    public int getUniqueMessages() {
+        if (templateMiner != null) {
+            return templateMiner.size();
+        }
+        return messageSketch != null ? messageSketch.size() : messageCounts.size();
+    }
+
+    /**
+     * "hourly", "daily" or null when no time buckets are kept
+     */
+    public String getTimeMode() {
+        return timeMode;
+    }
+
+    public boolean isCountingTemplates() {
+        return templateMiner != null;
+    }
+
+    public HeavyHitters getMessageSketch() {
+        return messageSketch;
+    }
+
+    public long getTotalLogs() {
+        return totalLogs;
+    }
+
+    public long getLevelTotal() {
+        return levelTotal;
+    }
+
+    public long getTimeTotal() {
+        return timeTotal;
+    }
+
+    public long getMessageTotal() {
+        return messageTotal;
+    }
+
+    public String getFirstDate() {
+        return firstDay <= lastDay ? dateKey(firstDay) : null;
+    }
+
+    public String getLastDate() {
+        return firstDay <= lastDay ? dateKey(lastDay) : null;
+    }
+}
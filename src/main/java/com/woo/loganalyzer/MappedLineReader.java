@@ -0,0 +1,115 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Walks the lines of a (memory-mapped) byte buffer without decoding them.
+ * Newlines are located eight bytes at a time and lines are exposed as
+ * offsets, leaving decoding to whoever actually needs the text.
+ */
+public class MappedLineReader {
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+
+    public MappedLineReader(ByteBuffer buffer) {
+        // Little-endian so the lowest set bit of a match is the first byte
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Advance to the next line
+     *
+     * @return false once the buffer is exhausted
+     */
+    public boolean next() {
+        if (position >= limit) {
+            return false;
+        }
+
+        int newline = indexOfNewline(buffer, position, limit);
+        lineStart = position;
+        if (newline < 0) {
+            lineEnd = limit;
+            position = limit;
+        } else {
+            lineEnd = newline;
+            position = newline + 1;
+        }
+
+        // Treat "\r\n" like BufferedReader.readLine() does
+        if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        return true;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Count lines the way BufferedReader.readLine() would: a trailing
+     * line without a newline still counts
+     */
+    public static long countLines(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int limit = bytes.limit();
+        long count = 0;
+        int i = 0;
+
+        for (; i + 8 <= limit; i += 8) {
+            long word = bytes.getLong(i) ^ NEWLINES;
+            // High bit set for every byte that is not a newline
+            long nonZero = ((word & LOW_BITS) + LOW_BITS | word) & HIGH_BITS;
+            count += 8 - Long.bitCount(nonZero);
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) == '\n') {
+                count++;
+            }
+        }
+
+        if (limit > 0 && bytes.get(limit - 1) != '\n') {
+            count++;
+        }
+        return count;
+    }
+
+    private static int indexOfNewline(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+
+        for (; i + 8 <= limit; i += 8) {
+            long word = buffer.getLong(i) ^ NEWLINES;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,63 @@
+package com.woo.loganalyzer;
+
+/**
+ * Counts matching lines without formatting them. Without per-pattern
+ * hits nothing is decoded either, so the count can come from index block
+ * counts or a {@link LogCache} when the filter allows.
+ */
+public class MatchCounter implements LineAggregator<MatchCounter> {
+
+    private final PatternHits hits;
+    private long matchCount;
+
+    /**
+     * @param hits per-pattern counts to update, or null
+     */
+    public MatchCounter(PatternHits hits) {
+        this.hits = hits;
+    }
+
+    public MatchCounter newPartial() {
+        return new MatchCounter(hits != null ? hits.newPartial() : null);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        if (hits != null) {
+            hits.accept(line, lineNumber);
+        }
+        matchCount++;
+    }
+
+    @Override
+    public boolean needsText() {
+        return hits != null;
+    }
+
+    @Override
+    public boolean needsMessage() {
+        return false;
+    }
+
+    @Override
+    public boolean acceptBlock(LogIndex.Block block, LogFilter filter) {
+        if (hits != null || !block.fullyMatches(filter)) {
+            return false;
+        }
+        LogLevel only = filter.getLevel();
+        matchCount += only == null ? block.lineCount() : block.levelCount(only);
+        return true;
+    }
+
+    @Override
+    public void merge(MatchCounter next, long lineOffset) {
+        if (hits != null) {
+            hits.merge(next.hits, lineOffset);
+        }
+        matchCount += next.matchCount;
+    }
+
+    public long getMatchCount() {
+        return matchCount;
+    }
+}
@@ -0,0 +1,86 @@
+package com.woo.loganalyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prints matching lines in file order through a {@link LineWriter}.
+ * The root instance prints as it goes; partial instances for later chunks
+ * buffer their lines until they are merged into the root. Optionally
+ * counts per-pattern hits of the printed lines as well.
+ */
+public class MatchPrinter implements LineAggregator<MatchPrinter> {
+
+    private final LineWriter out;
+    private final boolean showLineNumbers;
+    private final PatternHits hits;
+
+    private final List<String> lines = new ArrayList<>();
+    private long[] lineNumbers = new long[16];
+    private long matchCount;
+
+    /**
+     * @param out writer to print to, or null to buffer until merged
+     */
+    public MatchPrinter(LineWriter out, boolean showLineNumbers) {
+        this(out, showLineNumbers, null);
+    }
+
+    /**
+     * @param hits per-pattern counts to update, or null
+     */
+    public MatchPrinter(LineWriter out, boolean showLineNumbers, PatternHits hits) {
+        this.out = out;
+        this.showLineNumbers = showLineNumbers;
+        this.hits = hits;
+    }
+
+    public MatchPrinter newPartial() {
+        return new MatchPrinter(null, showLineNumbers, hits != null ? hits.newPartial() : null);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        if (hits != null) {
+            hits.accept(line, lineNumber);
+        }
+        add(line.text(), lineNumber);
+    }
+
+    private void add(String line, long lineNumber) {
+        if (out != null) {
+            print(line, lineNumber);
+        } else {
+            int buffered = lines.size();
+            if (buffered == lineNumbers.length) {
+                lineNumbers = Arrays.copyOf(lineNumbers, buffered * 2);
+            }
+            lineNumbers[buffered] = lineNumber;
+            lines.add(line);
+        }
+        matchCount++;
+    }
+
+    @Override
+    public void merge(MatchPrinter next, long lineOffset) {
+        if (hits != null) {
+            hits.merge(next.hits, lineOffset);
+        }
+        for (int i = 0; i < next.lines.size(); i++) {
+            add(next.lines.get(i), next.lineNumbers[i] + lineOffset);
+        }
+    }
+
+    private void print(String line, long lineNumber) {
+        if (showLineNumbers) {
+            // Show line numbers when searching
+            out.write("[Line ").write(lineNumber).write("] ");
+        }
+        out.write(line).newLine();
+    }
+
+    public long getMatchCount() {
+        return matchCount;
+    }
+}
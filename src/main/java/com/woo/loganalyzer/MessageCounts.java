@@ -0,0 +1,205 @@
+package com.woo.loganalyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exact message counts keyed by the raw UTF-8 bytes of the message.
+ * An open-addressing table of entry indexes is probed with a hash of the
+ * bytes, which are compared in place against a byte arena, so counting a
+ * message already seen allocates nothing and decodes nothing. Keys are
+ * only turned into strings when the counts are read.
+ */
+public class MessageCounts {
+
+    private static final int INITIAL_ENTRIES = 1024;
+
+    // Key bytes, back to back
+    private byte[] arena = new byte[64 * 1024];
+    private int arenaLength;
+
+    // Per entry, in first-seen order
+    private int[] offsets = new int[INITIAL_ENTRIES];
+    private int[] lengths = new int[INITIAL_ENTRIES];
+    private int[] hashes = new int[INITIAL_ENTRIES];
+    private long[] counts = new long[INITIAL_ENTRIES];
+    private int size;
+
+    // Entry index + 1 per slot, 0 when free; kept at most half full
+    private int[] table = new int[INITIAL_ENTRIES * 2];
+
+    // Encodes messages that arrive as strings
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Count the message in buffer[from, to)
+     */
+    public void add(ByteBuffer buffer, int from, int to) {
+        add(buffer, from, to, 1);
+    }
+
+    public void add(String message) {
+        int length = message.length();
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        // ASCII is copied as is; anything else goes through the encoder
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = message.getBytes(StandardCharsets.UTF_8);
+                add(ByteBuffer.wrap(encoded), 0, encoded.length, 1);
+                return;
+            }
+            scratch[i] = (byte) c;
+        }
+        add(ByteBuffer.wrap(scratch), 0, length, 1);
+    }
+
+    private void add(ByteBuffer buffer, int from, int to, long count) {
+        int hash = hash(buffer, from, to);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                break;
+            }
+            if (hashes[entry] == hash && equalsKey(entry, buffer, from, to)) {
+                counts[entry] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int entry = newEntry(buffer, from, to, hash, count);
+        table[slot] = entry + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    private int newEntry(ByteBuffer buffer, int from, int to, int hash, long count) {
+        int length = to - from;
+        if (arenaLength + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arenaLength + length, arena.length * 2));
+        }
+        buffer.get(from, arena, arenaLength, length);
+
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        offsets[size] = arenaLength;
+        lengths[size] = length;
+        hashes[size] = hash;
+        counts[size] = count;
+        arenaLength += length;
+        return size++;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    private boolean equalsKey(int entry, ByteBuffer buffer, int from, int to) {
+        if (lengths[entry] != to - from) {
+            return false;
+        }
+        int offset = offsets[entry];
+        for (int i = from; i < to; i++) {
+            if (arena[offset++] != buffer.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        // Spread the bits so the low ones used for slots are well mixed
+        hash ^= hash >>> 16;
+        hash *= 0x85EB_CA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * Add the counts of another instance; its new keys follow ours in first-seen order
+     */
+    public void merge(MessageCounts other) {
+        ByteBuffer keys = ByteBuffer.wrap(other.arena);
+        for (int entry = 0; entry < other.size; entry++) {
+            int offset = other.offsets[entry];
+            add(keys, offset, offset + other.lengths[entry], other.counts[entry]);
+        }
+    }
+
+    /**
+     * Write the keys and counts in first-seen order
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int entry = 0; entry < size; entry++) {
+            out.writeInt(lengths[entry]);
+            out.write(arena, offsets[entry], lengths[entry]);
+            out.writeLong(counts[entry]);
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        int entries = in.readInt();
+        byte[] key = new byte[256];
+        for (int i = 0; i < entries; i++) {
+            int length = in.readInt();
+            if (length > key.length) {
+                key = new byte[Math.max(length, key.length * 2)];
+            }
+            in.readFully(key, 0, length);
+            add(ByteBuffer.wrap(key), 0, length, in.readLong());
+        }
+    }
+
+    /**
+     * Number of distinct messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The counts by message, inserted in first-seen order
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int entry = 0; entry < size; entry++) {
+            String message = new String(arena, offsets[entry], lengths[entry], StandardCharsets.UTF_8);
+            Long previous = map.put(message, counts[entry]);
+            if (previous != null) {
+                // Different invalid byte sequences can decode to the same string
+                map.put(message, previous + counts[entry]);
+            }
+        }
+        return map;
+    }
+}
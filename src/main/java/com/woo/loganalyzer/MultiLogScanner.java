@@ -0,0 +1,168 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Scans several log files as one input. A single file keeps its own
+ * multi-threaded {@link LogScanner}; with several files, whole files are
+ * scanned concurrently and their partial aggregates merged in argument
+ * order. Files whose time range falls outside the date filter are
+ * skipped without being read.
+ */
+public class MultiLogScanner {
+
+    private final List<LogScanner> scanners = new ArrayList<>();
+    private final int threads;
+    private final LogFormat format;
+    private int skippedFiles;
+
+    public MultiLogScanner(List<File> logFiles, int threads) {
+        this(logFiles, threads, LogFormat.DEFAULT);
+    }
+
+    public MultiLogScanner(List<File> logFiles, int threads, LogFormat format) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.format = format;
+        for (File logFile : logFiles) {
+            // Parallelism goes across files when there is more than one
+            scanners.add(new LogScanner(logFile, logFiles.size() == 1 ? threads : 1, format));
+        }
+    }
+
+    public List<LogScanner> getScanners() {
+        return scanners;
+    }
+
+    /**
+     * Record stage times of later scans of every file
+     */
+    public void useMetrics(RunMetrics metrics) {
+        for (LogScanner scanner : scanners) {
+            scanner.useMetrics(metrics);
+        }
+    }
+
+    /**
+     * Number of files skipped by the last scan because of the date filter
+     */
+    public int getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    public long countLines() throws IOException {
+        long count = 0;
+        for (LogScanner scanner : scanners) {
+            count += scanner.countLines();
+        }
+        return count;
+    }
+
+    /**
+     * Files that may hold lines inside the filter's date window
+     */
+    public List<LogScanner> candidates(LogFilter filter) throws IOException {
+        List<LogScanner> candidates = new ArrayList<>();
+        for (LogScanner scanner : scanners) {
+            if (scanner.mayMatchDates(filter)) {
+                candidates.add(scanner);
+            }
+        }
+        skippedFiles = scanners.size() - candidates.size();
+        return candidates;
+    }
+
+    /**
+     * Feed every matching line of every file to the root aggregator
+     *
+     * @return the number of lines read
+     */
+    public <T extends LineAggregator<T>> long scan(LogFilter filter, T root, Supplier<T> factory)
+            throws IOException {
+        List<LogScanner> candidates = candidates(filter);
+        if (candidates.size() <= 1 || threads == 1) {
+            long linesRead = 0;
+            for (LogScanner scanner : candidates) {
+                linesRead += scanner.scan(filter, root, factory);
+            }
+            return linesRead;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, candidates.size()));
+        try {
+            List<Future<T>> parts = new ArrayList<>();
+            long[] linesRead = new long[candidates.size()];
+            for (int i = 0; i < candidates.size(); i++) {
+                LogScanner scanner = candidates.get(i);
+                int slot = i;
+                parts.add(pool.submit(() -> {
+                    T part = factory.get();
+                    linesRead[slot] = scanner.scan(filter, part, factory);
+                    return part;
+                }));
+            }
+
+            long total = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                root.merge(join(parts.get(i)), total);
+                total += linesRead[i];
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Feed every matching line of every file to the sink, file after file on the calling thread
+     *
+     * @return the number of lines read
+     */
+    public long scan(LogFilter filter, LineSink sink) throws IOException {
+        long linesRead = 0;
+        for (LogScanner scanner : candidates(filter)) {
+            linesRead += scanner.scan(filter, sink);
+        }
+        return linesRead;
+    }
+
+    /**
+     * Feed every matching line to the sink in time order, merging the files by timestamp as
+     * {@link TimeOrderedPrinter} does, for sinks that cannot take the files one after the other.
+     * Reads the logs themselves, without indexes or caches.
+     *
+     * @return the number of lines fed
+     */
+    public long scanInTimeOrder(LogFilter filter, LineSink sink) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (LogScanner scanner : candidates(filter)) {
+            files.add(scanner.getLogFile());
+        }
+        return TimeOrderedPrinter.merge(files, filter, format,
+                cursor -> sink.accept(cursor.line(), cursor.lineNumber()));
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.woo.loganalyzer;
+
+/**
+ * Feeds every line to two sinks, so two reports come out of one sequential pass
+ */
+public class PairedSink implements LineSink {
+
+    private final LineSink first;
+    private final LineSink second;
+
+    public PairedSink(LineSink first, LineSink second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        first.accept(line, lineNumber);
+        second.accept(line, lineNumber);
+    }
+
+    @Override
+    public boolean needsText() {
+        return first.needsText() || second.needsText();
+    }
+
+    @Override
+    public boolean needsMessage() {
+        return first.needsMessage() || second.needsMessage();
+    }
+}
@@ -0,0 +1,182 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable holder for one tokenized log line.
+ * Fields are offsets into the underlying buffer; the line and message
+ * text are only decoded when asked for. Instances are overwritten by the
+ * next parse, so aggregators must copy out anything they keep.
+ */
+public class ParsedLine {
+
+    public static final long SECONDS_PER_DAY = 86_400;
+    public static final long SECONDS_PER_HOUR = 3_600;
+
+    ByteBuffer buffer;
+    long bufferOffset;
+    int start;
+    int end;
+
+    boolean hasDate;
+    boolean hasTime;
+    long epochSecond;
+    LogLevel level;
+    int messageStart;
+    // End of the message field before trimming; the line end unless the format puts fields after it
+    int messageLimit;
+    // The message bytes hold JSON escape sequences, decoded by message()
+    boolean messageEscaped;
+
+    private String text;
+    private byte[] scratch = new byte[256];
+
+    // Message taken from a LogCache dictionary instead of the buffer, or decoded from its escapes
+    private String cachedMessage;
+
+    void reset(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+        this.hasDate = false;
+        this.hasTime = false;
+        this.epochSecond = 0;
+        this.level = null;
+        this.messageStart = -1;
+        this.messageLimit = end;
+        this.messageEscaped = false;
+        this.text = null;
+        this.cachedMessage = null;
+    }
+
+    /**
+     * Fill in the parsed fields from cached columns; there is no line text
+     */
+    void setCached(boolean hasDate, boolean hasTime, long epochSecond, LogLevel level, String message) {
+        reset(null, 0, 0);
+        this.hasDate = hasDate;
+        this.hasTime = hasTime;
+        this.epochSecond = epochSecond;
+        this.level = level;
+        this.cachedMessage = message;
+        this.messageStart = message != null ? 0 : -1;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Position of the first byte of the line in the file
+     */
+    public long fileOffset() {
+        return bufferOffset + start;
+    }
+
+    /**
+     * True when the line has a valid yyyy-MM-dd date
+     */
+    public boolean hasDate() {
+        return hasDate;
+    }
+
+    /**
+     * True when the date comes with a valid HH:mm:ss time
+     */
+    public boolean hasTime() {
+        return hasTime;
+    }
+
+    /**
+     * Timestamp as UTC epoch seconds (midnight when the line has a date but no time)
+     */
+    public long epochSecond() {
+        return epochSecond;
+    }
+
+    public long epochDay() {
+        return Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    public long epochHour() {
+        return Math.floorDiv(epochSecond, SECONDS_PER_HOUR);
+    }
+
+    /**
+     * Level taken from the level field, or null if the line has none
+     */
+    public LogLevel level() {
+        return level;
+    }
+
+    /**
+     * True when message() is exactly the bytes messageStart() to messageEnd() of buffer(), so they
+     * can be used without decoding; false for cached lines and for JSON messages with escape sequences
+     */
+    public boolean isMessageInBuffer() {
+        return buffer != null && !messageEscaped;
+    }
+
+    /**
+     * Offset of the message text in the buffer, or -1 if there is no message
+     */
+    public int messageStart() {
+        return messageStart;
+    }
+
+    /**
+     * The whole line, decoded once and cached
+     */
+    public String text() {
+        if (text == null) {
+            text = decode(start, end);
+        }
+        return text;
+    }
+
+    /**
+     * The message field, trimmed, or null if the line has none
+     */
+    public String message() {
+        if (messageStart < 0) {
+            return null;
+        }
+        if (cachedMessage != null) {
+            return cachedMessage;
+        }
+        if (messageEscaped) {
+            cachedMessage = JsonLineParser.unescape(decode(messageStart, messageEnd())).stripTrailing();
+            return cachedMessage;
+        }
+        return decode(messageStart, messageEnd());
+    }
+
+    /**
+     * End of the message in the buffer, before trailing whitespace (only valid when messageStart() >= 0)
+     */
+    public int messageEnd() {
+        int messageEnd = messageLimit;
+        while (messageEnd > messageStart && LogLineParser.isWhitespace(buffer.get(messageEnd - 1))) {
+            messageEnd--;
+        }
+        return messageEnd;
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package com.woo.loganalyzer;
+
+import java.util.List;
+
+/**
+ * Counts, for every pattern of a filter, the accepted lines it matches.
+ * A line matching several patterns counts once for each of them.
+ */
+public class PatternHits implements LineAggregator<PatternHits> {
+
+    private final List<PatternSet> groups;
+    private final long[][] hits;
+
+    public PatternHits(List<PatternSet> groups) {
+        this.groups = groups;
+        this.hits = new long[groups.size()][];
+        for (int i = 0; i < groups.size(); i++) {
+            hits[i] = new long[groups.get(i).size()];
+        }
+    }
+
+    public PatternHits newPartial() {
+        return new PatternHits(groups);
+    }
+
+    @Override
+    public void accept(ParsedLine line, long lineNumber) {
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).countMatches(line, hits[i]);
+        }
+    }
+
+    @Override
+    public void merge(PatternHits next, long lineOffset) {
+        for (int i = 0; i < hits.length; i++) {
+            for (int j = 0; j < hits[i].length; j++) {
+                hits[i][j] += next.hits[i][j];
+            }
+        }
+    }
+
+    public List<PatternSet> getGroups() {
+        return groups;
+    }
+
+    public long getHits(int group, int pattern) {
+        return hits[group][pattern];
+    }
+}
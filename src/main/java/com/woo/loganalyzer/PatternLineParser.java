@@ -0,0 +1,101 @@
+package com.woo.loganalyzer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses lines against a pattern compiled by {@link LogFormat}, walking
+ * its steps over the raw bytes. Parsing stops at the first step that does
+ * not match; fields found up to then are kept, so a continuation line
+ * such as a stack trace frame simply has no timestamp or level.
+ */
+public class PatternLineParser extends LogLineParser {
+
+    private final LogFormat.Step[] steps;
+    private final ZoneConverter zone;
+
+    PatternLineParser(LogFormat.Step[] steps, ZoneConverter zone) {
+        this.steps = steps;
+        this.zone = zone;
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, int start, int end, ParsedLine line) {
+        line.reset(buffer, start, end);
+
+        int position = start;
+        for (LogFormat.Step step : steps) {
+            switch (step.kind()) {
+                case LogFormat.LITERAL -> {
+                    if (!matchesAt(buffer, position, end, step.literal())) {
+                        return;
+                    }
+                    position += step.literal().length;
+                }
+                case LogFormat.SPACE -> {
+                    if (position >= end || !isWhitespace(buffer.get(position))) {
+                        return;
+                    }
+                    position = skipWhitespace(buffer, position, end);
+                }
+                case LogFormat.TIMESTAMP -> {
+                    position = parseTimestamp(buffer, position, end, line, zone);
+                    if (position < 0) {
+                        return;
+                    }
+                }
+                default -> {
+                    int fieldEnd = fieldEnd(buffer, position, end, step);
+                    if (fieldEnd < 0) {
+                        return;
+                    }
+                    if (step.kind() == LogFormat.LEVEL) {
+                        line.level = LogLevel.fromBytesIgnoreCase(buffer, position, fieldEnd);
+                        if (line.level == null) {
+                            return;
+                        }
+                    } else if (step.kind() == LogFormat.MESSAGE && fieldEnd > position) {
+                        line.messageStart = position;
+                        line.messageLimit = fieldEnd;
+                    }
+                    position = fieldEnd;
+                }
+            }
+        }
+    }
+
+    /**
+     * End of the field starting at position, or -1 if the literal that should follow it is missing
+     */
+    private static int fieldEnd(ByteBuffer buffer, int position, int end, LogFormat.Step step) {
+        if (step.toSpace()) {
+            int fieldEnd = position;
+            while (fieldEnd < end && !isWhitespace(buffer.get(fieldEnd))) {
+                fieldEnd++;
+            }
+            return fieldEnd;
+        }
+        byte[] literal = step.literal();
+        if (literal == null) {
+            return end;
+        }
+        byte first = literal[0];
+        for (int i = position; i <= end - literal.length; i++) {
+            if (buffer.get(i) == first && matchesAt(buffer, i, end, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(ByteBuffer buffer, int position, int end, byte[] literal) {
+        if (end - position < literal.length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (buffer.get(position + i) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
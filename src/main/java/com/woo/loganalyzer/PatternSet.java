@@ -0,0 +1,441 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A group of case-insensitive search terms and regexes that a line
+ * matches if any one of them does. All ASCII terms, together with a
+ * literal that each regex requires where one can be found, go into a
+ * single {@link AhoCorasick} automaton, so each line is read once for
+ * the whole group. A regex only runs when its literal was seen; terms
+ * with non-ASCII characters are checked on the decoded line.
+ *
+ * For each pattern the set also knows the tokens every match must contain
+ * whole (see {@link #wholeTokens}), which lets index blocks whose
+ * {@link TokenBloom} lacks them be skipped.
+ */
+public class PatternSet {
+
+    // Shortest regex literal worth checking before running the regex
+    private static final int MIN_PREFILTER_LENGTH = 3;
+
+    // Prefix marking a regex in a patterns file
+    static final String REGEX_PREFIX = "regex:";
+
+    private final List<String> labels = new ArrayList<>();
+
+    // Per pattern: the compiled regex, or for terms the lower-case text when it is not all ASCII
+    private final List<Pattern> regexes = new ArrayList<>();
+    private final List<String> textTerms = new ArrayList<>();
+    private final List<Boolean> prefiltered = new ArrayList<>();
+    // Per pattern: hashes of the tokens every match contains whole, or null when there are none
+    private final List<long[]> tokenHashes = new ArrayList<>();
+
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<Integer> keyOwners = new ArrayList<>();
+
+    private AhoCorasick automaton;
+    private int[] owners;
+
+    // True when every pattern is an ASCII term, so the automaton alone decides
+    private boolean keysOnly;
+
+    private PatternSet() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if a regex is invalid
+     */
+    public static PatternSet of(List<String> terms, List<String> regexPatterns) {
+        PatternSet set = new PatternSet();
+        for (String term : terms) {
+            set.addTerm(term);
+        }
+        for (String regex : regexPatterns) {
+            set.addRegex(regex);
+        }
+        set.compile();
+        return set;
+    }
+
+    /**
+     * Read one pattern per line; lines starting with "regex:" are regexes,
+     * everything else a search term. Blank lines and lines starting with
+     * '#' are skipped.
+     *
+     * @throws IllegalArgumentException if a regex is invalid or there are no patterns
+     */
+    public static PatternSet load(File file) throws IOException {
+        PatternSet set = new PatternSet();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(REGEX_PREFIX)) {
+                set.addRegex(line.substring(REGEX_PREFIX.length()));
+            } else {
+                set.addTerm(line);
+            }
+        }
+        if (set.size() == 0) {
+            throw new IllegalArgumentException("No patterns in " + file.getPath());
+        }
+        set.compile();
+        return set;
+    }
+
+    private void addTerm(String term) {
+        byte[] ascii = asciiBytes(term.toLowerCase());
+        if (ascii != null) {
+            keys.add(ascii);
+            keyOwners.add(size());
+        }
+        add("'" + term + "'", null, ascii != null ? null : term.toLowerCase(), false,
+                ascii != null ? wholeTokens(term) : null);
+    }
+
+    private void addRegex(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex pattern - " + e.getDescription());
+        }
+        String literal = requiredLiteral(regex);
+        if (literal != null) {
+            keys.add(literal.getBytes(StandardCharsets.US_ASCII));
+            keyOwners.add(size());
+        }
+        add("/" + regex + "/", pattern, null, literal != null, requiredTokens(regex));
+    }
+
+    private void add(String label, Pattern regex, String textTerm, boolean hasPrefilter, List<String> tokens) {
+        labels.add(label);
+        regexes.add(regex);
+        textTerms.add(textTerm);
+        prefiltered.add(hasPrefilter);
+        tokenHashes.add(tokens != null && !tokens.isEmpty()
+                ? tokens.stream().mapToLong(TokenBloom::hash).toArray()
+                : null);
+    }
+
+    private void compile() {
+        if (!keys.isEmpty()) {
+            automaton = new AhoCorasick(keys);
+            owners = keyOwners.stream().mapToInt(Integer::intValue).toArray();
+        }
+        keysOnly = keys.size() == size() && regexes.stream().allMatch(Objects::isNull);
+    }
+
+    public int size() {
+        return labels.size();
+    }
+
+    /**
+     * Display form of a pattern: 'term' or /regex/
+     */
+    public String label(int index) {
+        return labels.get(index);
+    }
+
+    public boolean matches(ParsedLine line) {
+        return find(line, null);
+    }
+
+    /**
+     * False only if no line of a block with these tokens can match: every
+     * pattern needs a token the block lacks
+     */
+    public boolean mayMatch(TokenBloom tokens) {
+        for (long[] hashes : tokenHashes) {
+            if (hashes == null) {
+                return true; // Nothing to look up
+            }
+            boolean all = true;
+            for (long hash : hashes) {
+                if (!tokens.mightContain(hash)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add one to the hit count of every pattern the line matches
+     */
+    public void countMatches(ParsedLine line, long[] hits) {
+        find(line, hits);
+    }
+
+    /**
+     * Stops at the first match unless hits is given
+     */
+    private boolean find(ParsedLine line, long[] hits) {
+        boolean all = hits != null;
+
+        // Terms found, and regexes whose literal was found
+        boolean[] seen = null;
+        if (automaton != null) {
+            ByteBuffer buffer = line.buffer();
+            int end = line.end();
+            int state = 0;
+            for (int i = line.start(); i < end; i++) {
+                state = automaton.next(state, buffer.get(i));
+                int[] found = automaton.matches(state);
+                if (found == null) {
+                    continue;
+                }
+                for (int key : found) {
+                    int owner = owners[key];
+                    if (!all && regexes.get(owner) == null) {
+                        return true;
+                    }
+                    if (seen == null) {
+                        seen = new boolean[size()];
+                    }
+                    seen[owner] = true;
+                }
+            }
+        }
+
+        if (keysOnly && !all) {
+            return false;
+        }
+
+        boolean matched = false;
+        for (int i = 0; i < size(); i++) {
+            Pattern regex = regexes.get(i);
+            String textTerm = textTerms.get(i);
+            boolean hit;
+            if (regex != null) {
+                hit = (!prefiltered.get(i) || (seen != null && seen[i])) && regex.matcher(line.text()).find();
+            } else if (textTerm != null) {
+                hit = textTerm.isEmpty() || containsIgnoreCase(line.text(), textTerm);
+            } else {
+                hit = seen != null && seen[i];
+            }
+
+            if (hit) {
+                if (!all) {
+                    return true;
+                }
+                hits[i]++;
+                matched = true;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Longest run of ASCII characters that every match of the regex must
+     * contain, lower-cased, or null if none of at least
+     * MIN_PREFILTER_LENGTH can be found. Only simple top-level sequences
+     * are inspected; groups, classes and anything unusual end a run, and
+     * alternation or inline flags give up entirely.
+     */
+    static String requiredLiteral(String regex) {
+        List<String> runs = requiredRuns(regex, false);
+        if (runs == null) {
+            return null;
+        }
+        String best = "";
+        for (String run : runs) {
+            best = run.length() > best.length() ? run : best;
+        }
+        return best.length() >= MIN_PREFILTER_LENGTH ? best : null;
+    }
+
+    /**
+     * Tokens that every match of the regex contains whole, lower-cased:
+     * those inside a required literal with a non-token character, \b,
+     * ^ or $ on both sides, e.g. "abc" in \babc\b or in id=abc;
+     */
+    static List<String> requiredTokens(String regex) {
+        List<String> runs = requiredRuns(regex, true);
+        if (runs == null) {
+            return null;
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String run : runs) {
+            tokens.addAll(wholeTokens(run));
+        }
+        return tokens;
+    }
+
+    /**
+     * Tokens with a non-token character on both sides within text. They
+     * are whole tokens of any line containing text; the tokens at either
+     * end of text may be part of longer ones and are left out.
+     */
+    static List<String> wholeTokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            if (!TokenBloom.isTokenChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && TokenBloom.isTokenChar(text.charAt(i))) {
+                i++;
+            }
+            if (start > 0 && i < text.length()) {
+                tokens.add(text.substring(start, i).toLowerCase());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The runs of consecutive required ASCII characters of a regex,
+     * lower-cased, or null if it cannot be analyzed. With boundaries, \b,
+     * \s, \W, ^ and $ stay in a run as '\0' instead of ending it.
+     */
+    private static List<String> requiredRuns(String regex, boolean boundaries) {
+        if (regex.contains("(?") || regex.contains("\\Q")) {
+            return null;
+        }
+
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            int literal = -1;
+
+            if (c == '\\') {
+                if (i + 1 >= length) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped < 0x80 && !Character.isLetterOrDigit(escaped)) {
+                    literal = escaped;
+                } else if (boundaries && (escaped == 'b' || escaped == 's' || escaped == 'W')) {
+                    literal = 0; // A boundary, or a character that is not part of a token
+                } else if ("xuc0123456789pPkN".indexOf(escaped) >= 0) {
+                    return null; // Escapes that consume more characters
+                }
+                i += 2;
+            } else if (c == '[' || c == '(') {
+                i = skipBracket(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '|' || c == ')' || c == '*' || c == '+' || c == '?' || c == '{') {
+                return null;
+            } else {
+                if (c < 0x80 && c != '.' && c != '^' && c != '$') {
+                    literal = c;
+                } else if (boundaries && (c == '^' || c == '$')) {
+                    literal = 0;
+                }
+                i++;
+            }
+
+            // A following quantifier decides whether the atom is required
+            boolean optional = false;
+            boolean repeated = false;
+            if (i < length) {
+                char q = regex.charAt(i);
+                if (q == '?' || q == '*') {
+                    optional = true;
+                    i++;
+                } else if (q == '+') {
+                    repeated = true;
+                    i++;
+                } else if (q == '{') {
+                    int close = regex.indexOf('}', i);
+                    if (close < 0) {
+                        return null;
+                    }
+                    optional = regex.charAt(i + 1) == '0' || regex.charAt(i + 1) == ',';
+                    repeated = !optional;
+                    i = close + 1;
+                }
+                if ((optional || repeated) && i < length && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i++; // Lazy or possessive
+                }
+            }
+
+            if (literal >= 0 && !optional) {
+                run.append(Character.toLowerCase((char) literal));
+            }
+            if (literal < 0 || optional || repeated) {
+                runs.add(run.toString());
+                run.setLength(0);
+            }
+        }
+        runs.add(run.toString());
+        return runs;
+    }
+
+    /**
+     * Index just past the group or class opening at start, or -1 if it is not closed
+     */
+    private static int skipBracket(String regex, int start) {
+        int depth = 0;
+        boolean inClass = false;
+        int classDepth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+                classDepth++;
+                // A ']' right after '[' or '[^' is a literal member
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']' && inClass) {
+                inClass = --classDepth > 0;
+            } else if (c == '(' && !inClass) {
+                depth++;
+            } else if (c == ')' && !inClass) {
+                depth--;
+            }
+            if (depth == 0 && !inClass) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] asciiBytes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return null;
+            }
+        }
+        return value.isEmpty() ? null : value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Same result as line.toLowerCase().contains(term) without copying the line
+    private static boolean containsIgnoreCase(String line, String term) {
+        int max = line.length() - term.length();
+        for (int i = 0; i <= max; i++) {
+            if (line.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package com.woo.loganalyzer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP front end of the serve subcommand, listening on the loopback
+ * interface. A POST to /query carries an ordinary command line in its
+ * body, one argument per line, and gets back as plain text what the
+ * command would print. Relative paths are resolved against the server's
+ * working directory.
+ *
+ * Loopback does not keep out web pages open in the user's browser, which
+ * can send GETs and "simple" POSTs to any port. Queries are therefore
+ * only taken as POSTs with a content type a page cannot send without a
+ * CORS preflight (which this server never answers), and options that
+ * write files are refused by {@link LogAnalyzerApp} for served queries.
+ *
+ * Each request runs on its own virtual thread with a fresh
+ * {@link LogAnalyzerApp} that shares the server's {@link ServerCache}.
+ * The status is 200 when the command exits with 0 and 400 otherwise,
+ * with the exit code in an X-Exit-Code header. Output is held back up to
+ * BUFFER_SIZE bytes so that errors get their status; longer output is
+ * streamed as it is written, with status 200.
+ */
+public final class QueryServer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Suggested request type; any type but the CORS-safelisted ones is accepted
+    static final String CONTENT_TYPE = "application/x-log-analyzer-args";
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final HttpServer server;
+    private final ServerCache cache;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private QueryServer(HttpServer server, ServerCache cache) {
+        this.server = server;
+        this.cache = cache;
+    }
+
+    /**
+     * Listen on the port (0 for any free one) until the JVM shuts down
+     */
+    static QueryServer start(int port, ServerCache cache) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        QueryServer server = new QueryServer(http, cache);
+        http.createContext("/query", server::handle);
+        http.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        http.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            http.stop(1); // Let running queries finish for up to a second
+            server.stopped.countDown();
+        }));
+        return server;
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().equals("/query")) {
+                sendText(exchange, 404, "Not found; send queries to /query\n");
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "Use POST, with one argument per line in the body\n");
+                return;
+            }
+            if (isSimpleContentType(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                sendText(exchange, 415, "Send the body as " + CONTENT_TYPE + "\n");
+                return;
+            }
+            List<String> args = bodyArguments(exchange.getRequestBody().readAllBytes());
+
+            long start = System.nanoTime();
+            Response response = new Response(exchange);
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(response, StandardCharsets.UTF_8), true);
+            int exitCode = new CommandLine(new LogAnalyzerApp(cache, response))
+                    .setOut(writer)
+                    .setErr(writer)
+                    .execute(args.toArray(new String[0]));
+            writer.flush();
+            String outcome = "exit " + exitCode;
+            try {
+                response.finish(exitCode);
+            } catch (IOException e) {
+                outcome += " (client went away)";
+            }
+
+            System.out.println(LocalDateTime.now().format(LOG_TIME_FORMAT) + " " + args + " -> " + outcome
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms; cache: " + cache.describe());
+        }
+    }
+
+    /**
+     * True when the content type is missing or one a browser sends cross-origin without a preflight
+     */
+    private static boolean isSimpleContentType(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        int parameters = contentType.indexOf(';');
+        String type = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).strip()
+                .toLowerCase(Locale.ROOT);
+        return type.isEmpty() || type.equals("text/plain") || type.equals("application/x-www-form-urlencoded")
+                || type.equals("multipart/form-data");
+    }
+
+    private static List<String> bodyArguments(byte[] body) {
+        List<String> args = new ArrayList<>();
+        for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            args.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+        }
+        return args;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Body of one response: buffered until it outgrows BUFFER_SIZE or the command ends, then streamed
+     */
+    private static final class Response extends OutputStream {
+
+        private final HttpExchange exchange;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream body;
+
+        Response(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+            if (body == null && buffer.size() + length > BUFFER_SIZE) {
+                // Too long to hold back: start a chunked 200 response
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+                buffer.writeTo(body);
+                buffer = null;
+            }
+            if (body != null) {
+                body.write(bytes, offset, length);
+            } else {
+                buffer.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        synchronized void finish(int exitCode) throws IOException {
+            if (body == null) {
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.getResponseHeaders().set("X-Exit-Code", Integer.toString(exitCode));
+                exchange.sendResponseHeaders(exitCode == 0 ? 200 : 400, buffer.size() > 0 ? buffer.size() : -1);
+                body = exchange.getResponseBody();
+                buffer.writeTo(body);
+            }
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.woo.loganalyzer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+/**
+ * Cost of one run for --metrics: bytes and lines read, time per stage,
+ * lines rejected by each filter check, peak heap and GC time.
+ *
+ * Stages are only measured when a {@link LogScanner} maps the file
+ * itself. Each range is first paged in as a whole, which is the read
+ * stage. The loop over its lines is timed as a whole, and one line in
+ * SAMPLE_INTERVAL is also timed step by step; the loop time is split
+ * over parse, filter and aggregate in the sampled proportions, so timing
+ * does not slow down every line. With several threads, stage times are
+ * summed over the threads and can exceed the wall time.
+ */
+public final class RunMetrics {
+
+    // Timing every line would cost as much as parsing some of them
+    static final int SAMPLE_INTERVAL = 16;
+
+    private final long startNanos = System.nanoTime();
+    private final List<String> checkNames;
+    private final long[] rejected;
+
+    private boolean measured;
+    private long bytesRead;
+    private long linesRead;
+    private long linesMatched;
+    private long readNanos;
+    private long loopNanos;
+    private long parseSample;
+    private long filterSample;
+    private long acceptSample;
+    private long outputNanos;
+    private boolean linesAreOutput;
+
+    public RunMetrics(LogFilter filter) {
+        this.checkNames = filter.getCheckNames();
+        this.rejected = new long[checkNames.size()];
+    }
+
+    /**
+     * Counters for one range, filled by a single thread and added back with {@link #add}
+     */
+    Scan newScan() {
+        return new Scan(rejected.length);
+    }
+
+    synchronized void add(Scan scan) {
+        measured = true;
+        bytesRead += scan.bytes;
+        linesRead += scan.lines;
+        linesMatched += scan.matched;
+        readNanos += scan.readNanos;
+        loopNanos += scan.loopNanos;
+        parseSample += scan.parseSample;
+        filterSample += scan.filterSample;
+        acceptSample += scan.acceptSample;
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] += scan.rejected[i];
+        }
+    }
+
+    /**
+     * Count the aggregator's time as output, for runs that print or export the matching lines
+     */
+    public void setLinesAreOutput(boolean linesAreOutput) {
+        this.linesAreOutput = linesAreOutput;
+    }
+
+    /**
+     * Time spent printing or exporting a report after the scan
+     */
+    public synchronized void addOutput(long nanos) {
+        outputNanos += nanos;
+    }
+
+    /**
+     * False when no scan read a file itself (compressed input, cache,
+     * several files listed in time order), so there are no stage times
+     */
+    public boolean isMeasured() {
+        return measured;
+    }
+
+    public long getWallNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getLinesMatched() {
+        return linesMatched;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public long getParseNanos() {
+        return share(parseSample);
+    }
+
+    public long getFilterNanos() {
+        return share(filterSample);
+    }
+
+    public long getAggregateNanos() {
+        return linesAreOutput ? 0 : share(acceptSample);
+    }
+
+    public long getOutputNanos() {
+        return outputNanos + (linesAreOutput ? share(acceptSample) : 0);
+    }
+
+    private long share(long sample) {
+        long sampled = parseSample + filterSample + acceptSample;
+        return sampled == 0 ? 0 : (long) (loopNanos * ((double) sample / sampled));
+    }
+
+    public List<String> getCheckNames() {
+        return checkNames;
+    }
+
+    /**
+     * Lines rejected by each check, indexed like {@link #getCheckNames}
+     */
+    public long[] getRejected() {
+        return rejected.clone();
+    }
+
+    /**
+     * Sum of the peak usage of the heap pools since the JVM started
+     */
+    public static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    public static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * The metrics as one JSON object; times in milliseconds, rates per second of wall time
+     */
+    public String toJson(List<String> files, int threads) {
+        long wallNanos = getWallNanos();
+        double seconds = Math.max(wallNanos, 1) / 1e9;
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"files\":[");
+        for (int i = 0; i < files.size(); i++) {
+            json.append(i > 0 ? "," : "").append(quote(files.get(i)));
+        }
+        json.append("],\"threads\":").append(threads);
+        json.append(",\"wallMillis\":").append(wallNanos / 1_000_000);
+        json.append(",\"measured\":").append(measured);
+        json.append(",\"bytesRead\":").append(bytesRead);
+        json.append(",\"linesRead\":").append(linesRead);
+        json.append(",\"linesMatched\":").append(linesMatched);
+        json.append(",\"bytesPerSecond\":").append((long) (bytesRead / seconds));
+        json.append(",\"linesPerSecond\":").append((long) (linesRead / seconds));
+        json.append(",\"stageMillis\":{\"read\":").append(readNanos / 1_000_000);
+        json.append(",\"parse\":").append(getParseNanos() / 1_000_000);
+        json.append(",\"filter\":").append(getFilterNanos() / 1_000_000);
+        json.append(",\"aggregate\":").append(getAggregateNanos() / 1_000_000);
+        json.append(",\"output\":").append(getOutputNanos() / 1_000_000);
+        json.append("},\"rejected\":{");
+        for (int i = 0; i < rejected.length; i++) {
+            json.append(i > 0 ? "," : "").append(quote(checkNames.get(i))).append(':').append(rejected[i]);
+        }
+        json.append("},\"peakHeapBytes\":").append(peakHeapBytes());
+        json.append(",\"gcCount\":").append(gcCount());
+        json.append(",\"gcMillis\":").append(gcMillis());
+        return json.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    static final class Scan {
+        long bytes;
+        long lines;
+        long matched;
+        long readNanos;
+        long loopNanos;
+        long parseSample;
+        long filterSample;
+        long acceptSample;
+        final long[] rejected;
+
+        private Scan(int checks) {
+            rejected = new long[checks];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Index and parsed-column cache of each log queried through
+ * {@link QueryServer}, kept in memory between requests. Both are loaded
+ * from their sidecar files when those are current, or else built in
+ * memory on the log's first query; the index with token filters, so
+ * searches skip blocks as well. A query is a read, so nothing is written
+ * next to the log.
+ *
+ * When a log's size or modification time changes, its index is extended
+ * from where it ended and its cache dropped. The cache is only rebuilt
+ * once a query finds the log unchanged since the previous one, so a log
+ * that is still being written is not parsed in full on every query.
+ * Entries are weighed by their estimated memory; past the budget the
+ * least recently used are evicted.
+ */
+final class ServerCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    ServerCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The index of the scanner's file, or null if it is compressed or the index could not be built
+     */
+    LogIndex index(LogScanner scanner) throws IOException {
+        return refresh(scanner).index;
+    }
+
+    /**
+     * The column cache of the scanner's file, or null while the log is changing or if it could not be built
+     */
+    LogCache cache(LogScanner scanner) throws IOException {
+        return refresh(scanner).cache;
+    }
+
+    private Entry refresh(LogScanner scanner) throws IOException {
+        String key = scanner.getLogFile().getAbsolutePath() + "\n" + scanner.getFormat().fingerprint();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+        }
+        // Concurrent queries of the same log wait for one load
+        synchronized (entry) {
+            entry.refresh(scanner);
+        }
+        evict(entry);
+        return entry;
+    }
+
+    private synchronized void evict(Entry used) {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.bytes;
+        }
+        // Eldest first; the entry just used stays even if it alone is over the budget
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (total > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (entry != used) {
+                total -= entry.bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of logs held and their estimated memory
+     */
+    synchronized String describe() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.bytes;
+        }
+        return entries.size() + " log(s), " + (total / (1024 * 1024)) + " MB";
+    }
+
+    private static final class Entry {
+
+        // Size and modification time of the log the index belongs to; -1 before the first query
+        private long length = -1;
+        private long lastModified = -1;
+        private LogIndex index;
+        private LogCache cache;
+        private boolean cacheFailed;
+        private volatile long bytes;
+
+        void refresh(LogScanner scanner) throws IOException {
+            File file = scanner.getLogFile();
+            long fileLength = file.length();
+            long fileModified = file.lastModified();
+            boolean unchanged = fileLength == length && fileModified == lastModified;
+            if (unchanged && (cache != null || cacheFailed)) {
+                return;
+            }
+
+            if (!unchanged) {
+                boolean firstQuery = length < 0;
+                length = fileLength;
+                lastModified = fileModified;
+                index = loadIndex(scanner, index);
+                cache = null;
+                cacheFailed = false;
+                if (!firstQuery) {
+                    bytes = index != null ? index.memoryBytes() : 0;
+                    return; // Still being written; try the cache once it settles
+                }
+            }
+
+            cache = loadCache(scanner);
+            cacheFailed = cache == null;
+            bytes = (index != null ? index.memoryBytes() : 0) + (cache != null ? cache.memoryBytes() : 0);
+        }
+
+        private static LogIndex loadIndex(LogScanner scanner, LogIndex previous) throws IOException {
+            File file = scanner.getLogFile();
+            if (scanner.getCompression() != Compression.NONE) {
+                return null;
+            }
+            LogIndex index = LogIndex.load(file, scanner.getFormat());
+            if (index != null && index.hasTokens()) {
+                return index;
+            }
+            try {
+                return LogIndex.buildInMemory(file, new LogScanner(file, 0, scanner.getFormat()), previous);
+            } catch (IOException e) {
+                System.err.println("Note: no index for " + file.getPath() + " - " + e.getMessage());
+                return null;
+            }
+        }
+
+        private static LogCache loadCache(LogScanner scanner) throws IOException {
+            File file = scanner.getLogFile();
+            LogCache cache = LogCache.load(file, scanner.getFormat());
+            if (cache != null) {
+                return cache;
+            }
+            try {
+                return LogCache.buildInMemory(file, scanner.getFormat());
+            } catch (IOException e) {
+                System.err.println("Note: no cache for " + file.getPath() + " - " + e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.woo.loganalyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming message clustering in the style of Drain.
+ * Tokens carrying variable data (numbers, IPs, UUIDs, ids) are masked,
+ * then each message is routed through a fixed-depth prefix tree keyed by
+ * token count and its first tokens. At the leaf it joins the most similar
+ * template, whose differing positions become wildcards, or starts a new
+ * one. The work per message depends on the tree depth and the small
+ * number of templates in one leaf, not on the total number of templates.
+ *
+ * "User registration: alice" and "User registration: bob" both end up in
+ * "User registration: &lt;*&gt;".
+ */
+public class TemplateMiner {
+
+    static final String WILDCARD = "<*>";
+
+    // Prefix tokens used for routing, similarity needed to join a template, children per tree node
+    private static final int DEPTH = 2;
+    private static final double SIMILARITY = 0.5;
+    private static final int MAX_CHILDREN = 100;
+
+    private final Map<Integer, Node> roots = new HashMap<>();
+    private final List<Template> templates = new ArrayList<>();
+
+    /**
+     * Count one message under its template
+     *
+     * @return the template's number, counting templates in order of first appearance from 0
+     */
+    public int add(String message) {
+        return add(tokenize(message), 1);
+    }
+
+    /**
+     * Merge the templates of another miner, keeping their counts
+     */
+    public void merge(TemplateMiner other) {
+        for (Template template : other.templates) {
+            add(template.tokens.clone(), template.count);
+        }
+    }
+
+    /**
+     * Count per template text, in order of first appearance
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Template template : templates) {
+            counts.merge(template.text(), template.count, Long::sum);
+        }
+        return counts;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Current text of a template returned by {@link #add}; it gains wildcards as messages join it
+     */
+    public String templateText(int template) {
+        return templates.get(template).text();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(templates.size());
+        for (Template template : templates) {
+            out.writeInt(template.tokens.length);
+            for (String token : template.tokens) {
+                LogStatistics.writeString(out, token);
+            }
+            out.writeLong(template.count);
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String[] tokens = new String[in.readInt()];
+            for (int j = 0; j < tokens.length; j++) {
+                tokens[j] = LogStatistics.readString(in);
+            }
+            add(tokens, in.readLong());
+        }
+    }
+
+    private int add(String[] tokens, long count) {
+        Node node = roots.computeIfAbsent(tokens.length, length -> new Node());
+        for (int i = 0; i < Math.min(DEPTH, tokens.length); i++) {
+            node = node.child(tokens[i]);
+        }
+
+        Template best = null;
+        double bestSimilarity = -1;
+        for (Template template : node.templates) {
+            double similarity = template.similarity(tokens);
+            if (similarity > bestSimilarity) {
+                best = template;
+                bestSimilarity = similarity;
+            }
+        }
+
+        if (best != null && bestSimilarity >= SIMILARITY) {
+            best.absorb(tokens);
+            best.count += count;
+            return best.number;
+        }
+        Template template = new Template(tokens, templates.size());
+        template.count = count;
+        node.templates.add(template);
+        templates.add(template);
+        return template.number;
+    }
+
+    static String[] tokenize(String message) {
+        List<String> tokens = new ArrayList<>();
+        int length = message.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(message.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(message.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                tokens.add(mask(message.substring(start, i)));
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Replace a token that carries variable data with the wildcard.
+     * Numbers, IPs, UUIDs, hex ids and mixed ids all contain a digit;
+     * for "key=value" and "key:value" only the value is masked.
+     */
+    static String mask(String token) {
+        int firstDigit = -1;
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isDigit(token.charAt(i))) {
+                firstDigit = i;
+                break;
+            }
+        }
+        if (firstDigit < 0) {
+            return token;
+        }
+
+        int separator = Math.max(token.lastIndexOf('=', firstDigit), token.lastIndexOf(':', firstDigit));
+        if (separator > 0) {
+            return token.substring(0, separator + 1) + WILDCARD;
+        }
+        return WILDCARD;
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Template> templates = new ArrayList<>();
+
+        /**
+         * Child for a routing token; once a node is full, new tokens share the wildcard child
+         */
+        Node child(String token) {
+            Node child = children.get(token);
+            if (child == null) {
+                if (children.size() >= MAX_CHILDREN && !token.equals(WILDCARD)) {
+                    token = WILDCARD;
+                    child = children.get(token);
+                }
+                if (child == null) {
+                    child = new Node();
+                    children.put(token, child);
+                }
+            }
+            return child;
+        }
+    }
+
+    private static final class Template {
+
+        private final String[] tokens;
+        private final int number;
+        private long count;
+        private String text;
+
+        Template(String[] tokens, int number) {
+            this.tokens = tokens;
+            this.number = number;
+        }
+
+        /**
+         * Share of positions the template already covers: equal tokens or wildcards
+         */
+        double similarity(String[] other) {
+            if (tokens.length == 0) {
+                return 1;
+            }
+            int same = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i].equals(WILDCARD) || tokens[i].equals(other[i])) {
+                    same++;
+                }
+            }
+            return (double) same / tokens.length;
+        }
+
+        void absorb(String[] other) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (!tokens[i].equals(other[i]) && !tokens[i].equals(WILDCARD)) {
+                    tokens[i] = WILDCARD;
+                    text = null;
+                }
+            }
+        }
+
+        String text() {
+            if (text == null) {
+                text = String.join(" ", tokens);
+            }
+            return text;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.woo.loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Prints the matching lines of several files as one time-ordered stream.
+ * Each file is already in time order, so a k-way merge over one cursor
+ * per file is enough: the heap holds a single pending line per file and
+ * nothing is sorted in memory. Lines with equal timestamps keep the
+ * order of the files on the command line.
+ */
+public class TimeOrderedPrinter {
+
+    private final LineWriter out;
+    private final boolean showLineNumbers;
+    private final PatternHits hits;
+    private final LogFormat format;
+
+    public TimeOrderedPrinter(LineWriter out, boolean showLineNumbers) {
+        this(out, showLineNumbers, null, LogFormat.DEFAULT);
+    }
+
+    /**
+     * @param hits per-pattern counts to update, or null
+     */
+    public TimeOrderedPrinter(LineWriter out, boolean showLineNumbers, PatternHits hits, LogFormat format) {
+        this.out = out;
+        this.showLineNumbers = showLineNumbers;
+        this.hits = hits;
+        this.format = format;
+    }
+
+    /**
+     * @return the number of lines printed
+     */
+    public long print(List<File> files, LogFilter filter) throws IOException {
+        return merge(files, filter, format, this::print);
+    }
+
+    /**
+     * Pass the cursor of each matching line of the files to the action, in time order
+     *
+     * @return the number of lines passed
+     */
+    static long merge(List<File> files, LogFilter filter, LogFormat format, Consumer<LogCursor> action)
+            throws IOException {
+        List<LogCursor> cursors = new ArrayList<>();
+        PriorityQueue<Pending> heap = new PriorityQueue<>(Comparator.comparingLong(Pending::timestamp)
+                .thenComparingInt(Pending::fileIndex));
+        long merged = 0;
+
+        try {
+            for (File file : files) {
+                LogCursor cursor = new LogCursor(file, filter, format);
+                cursors.add(cursor);
+                if (cursor.next()) {
+                    heap.add(new Pending(cursor, cursors.size() - 1, cursor.timestamp()));
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                Pending head = heap.poll();
+                LogCursor cursor = head.cursor();
+                action.accept(cursor);
+                merged++;
+
+                if (cursor.next()) {
+                    heap.add(new Pending(cursor, head.fileIndex(), cursor.timestamp()));
+                }
+            }
+        } finally {
+            for (LogCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        return merged;
+    }
+
+    private void print(LogCursor cursor) {
+        if (hits != null) {
+            hits.accept(cursor.line(), cursor.lineNumber());
+        }
+        out.write("[").write(cursor.getFile().getName());
+        if (showLineNumbers) {
+            out.write(" Line ").write(cursor.lineNumber());
+        }
+        out.write("] ").write(cursor.line().text()).newLine();
+    }
+
+    private record Pending(LogCursor cursor, int fileIndex, long timestamp) {
+    }
+}
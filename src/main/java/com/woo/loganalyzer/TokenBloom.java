@@ -0,0 +1,165 @@
+package com.woo.loganalyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over the distinct tokens of one {@link LogIndex} block.
+ * A token is a run of ASCII letters, digits and '_' (what regex \w
+ * matches), compared case-insensitively. Each filter is sized for its
+ * own block at about 10 bits per distinct token with 7 probes, so a
+ * token the block lacks is reported present about 1% of the time, and
+ * a token it has is always reported present.
+ */
+public final class TokenBloom {
+
+    private static final int PROBES = 7;
+    private static final int BITS_PER_TOKEN = 10;
+
+    private final long[] words;
+    private final int mask;
+
+    private TokenBloom(long[] words) {
+        this.words = words;
+        this.mask = words.length * 64 - 1;
+    }
+
+    public boolean mightContain(long hash) {
+        // Double hashing: probe i is h1 + i * h2
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    int sizeBytes() {
+        return words.length * 8;
+    }
+
+    static boolean isTokenChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Hash of the token in buffer[from, to), ignoring ASCII case
+     */
+    static long hash(ByteBuffer buffer, int from, int to) {
+        long hash = 0xCBF2_9CE4_8422_2325L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) | 0x20)) * 0x100_0000_01B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Hash of a token, ignoring ASCII case
+     */
+    static long hash(String token) {
+        long hash = 0xCBF2_9CE4_8422_2325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash = (hash ^ (token.charAt(i) | 0x20)) * 0x100_0000_01B3L;
+        }
+        return mix(hash);
+    }
+
+    // FNV alone leaves the high bits, used for the second probe hash, poorly mixed
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51_AFD7_ED55_8CCDL;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1; // 0 marks a free slot in Builder
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static TokenBloom read(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new TokenBloom(words);
+    }
+
+    /**
+     * Collects the distinct token hashes of a block, then sizes the filter for them
+     */
+    static final class Builder {
+
+        // Open addressing over hashes; 0 marks a free slot
+        private long[] table = new long[1024];
+        private int size;
+
+        /**
+         * Add every token of the line in buffer[from, to)
+         */
+        void addTokens(ByteBuffer buffer, int from, int to) {
+            int i = from;
+            while (i < to) {
+                if (!isTokenChar(buffer.get(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < to && isTokenChar(buffer.get(i))) {
+                    i++;
+                }
+                add(hash(buffer, start, i));
+            }
+        }
+
+        private void add(long hash) {
+            int mask = table.length - 1;
+            int slot = (int) hash & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == hash) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = hash;
+            if (++size * 2 > table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                size = 0;
+                for (long value : old) {
+                    if (value != 0) {
+                        add(value);
+                    }
+                }
+            }
+        }
+
+        TokenBloom build() {
+            // A power of two of at least BITS_PER_TOKEN bits per token, in whole words
+            long bits = Math.max(64, Long.highestOneBit(Math.max(1, (long) size * BITS_PER_TOKEN - 1)) << 1);
+            TokenBloom bloom = new TokenBloom(new long[(int) Math.min(bits / 64, 1 << 24)]);
+            for (long hash : table) {
+                if (hash != 0) {
+                    bloom.set(hash);
+                }
+            }
+            return bloom;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.woo.loganalyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Picks the N largest counts from a map with a bounded min-heap instead of
+ * sorting every entry. Ties keep the map's iteration order, which is what
+ * a stable sort by count followed by limit(N) would return.
+ */
+public final class TopN {
+
+    private TopN() {
+    }
+
+    public static <K> List<Map.Entry<K, Long>> of(Map<K, Long> counts, int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Head of the heap is the entry that drops out first: lowest count, then latest seen
+        Comparator<Ranked<K>> worstFirst = Comparator.<Ranked<K>>comparingLong(r -> r.entry().getValue())
+                .thenComparing(Comparator.<Ranked<K>>comparingInt(Ranked::order).reversed());
+        PriorityQueue<Ranked<K>> heap = new PriorityQueue<>(Math.min(n, counts.size()) + 1, worstFirst);
+
+        int order = 0;
+        for (Map.Entry<K, Long> entry : counts.entrySet()) {
+            if (heap.size() == n && entry.getValue() <= heap.peek().entry().getValue()) {
+                order++;
+                continue; // Cannot beat the current N-th entry
+            }
+            heap.add(new Ranked<>(entry, order++));
+            if (heap.size() > n) {
+                heap.poll();
+            }
+        }
+
+        List<Ranked<K>> ranked = new ArrayList<>(heap);
+        ranked.sort(worstFirst.reversed());
+
+        List<Map.Entry<K, Long>> top = new ArrayList<>(ranked.size());
+        for (Ranked<K> r : ranked) {
+            top.add(r.entry());
+        }
+        return top;
+    }
+
+    private record Ranked<K>(Map.Entry<K, Long> entry, int order) {
+    }
+}
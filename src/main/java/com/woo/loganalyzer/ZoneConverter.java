@@ -0,0 +1,39 @@
+package com.woo.loganalyzer;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Converts UTC epoch seconds to local epoch seconds in one zone. The
+ * offset is looked up once per stretch between two transitions (a DST
+ * change), so converting timestamps in time order does not allocate.
+ * Not thread-safe; each parser has its own.
+ */
+final class ZoneConverter {
+
+    private final ZoneRules rules;
+
+    // The offset applies to UTC seconds in [validFrom, validUntil)
+    private long validFrom = Long.MAX_VALUE;
+    private long validUntil = Long.MIN_VALUE;
+    private int offsetSeconds;
+
+    ZoneConverter(ZoneId zone) {
+        this.rules = zone.getRules();
+    }
+
+    long toLocal(long utcSecond) {
+        if (utcSecond < validFrom || utcSecond >= validUntil) {
+            Instant instant = Instant.ofEpochSecond(utcSecond);
+            offsetSeconds = rules.getOffset(instant).getTotalSeconds();
+            // One second later so a transition exactly at instant counts as the previous one
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            validFrom = previous != null ? previous.toEpochSecond() : Long.MIN_VALUE;
+            validUntil = next != null ? next.toEpochSecond() : Long.MAX_VALUE;
+        }
+        return utcSecond + offsetSeconds;
+    }
+}